@@ -0,0 +1,96 @@
+package com.example.application;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * Starts a local PostgreSQL instance and the application context against it
+ * for use in benchmarks.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+    private final EmbeddedPostgres postgres;
+    private final ConfigurableApplicationContext context;
+
+    private BenchmarkDatabase(EmbeddedPostgres postgres,
+            ConfigurableApplicationContext context) {
+        this.postgres = postgres;
+        this.context = context;
+    }
+
+    /**
+     * Starts a new database and application context.
+     *
+     * @param properties
+     *            additional application properties as
+     *            <code>name=value</code> pairs
+     */
+    public static BenchmarkDatabase start(String... properties)
+            throws IOException {
+        EmbeddedPostgres postgres = EmbeddedPostgres.builder().start();
+
+        String[] args = new String[properties.length + 4];
+        args[0] = "--spring.datasource.url="
+                + postgres.getJdbcUrl("postgres", "postgres");
+        args[1] = "--spring.datasource.password=";
+        args[2] = "--server.port=0";
+        args[3] = "--vaadin.launch-browser=false";
+        for (int i = 0; i < properties.length; i++) {
+            args[i + 4] = "--" + properties[i];
+        }
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                Application.class).run(args);
+        return new BenchmarkDatabase(postgres, context);
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public JdbcTemplate jdbc() {
+        return getBean(JdbcTemplate.class);
+    }
+
+    /**
+     * Inserts events directly into the event table, bypassing the backend.
+     *
+     * @return the sequence id of the first inserted event
+     */
+    public long insertEvents(String logId, int count, int payloadSize) {
+        JdbcTemplate jdbc = jdbc();
+        // Stay clear of ids that Hibernate may already have allocated
+        long first = jdbc.queryForObject(
+                "select greatest(coalesce(max(id), 0), (select last_value from event_log_entry_seq)) + 1000 from event_log_entry",
+                Long.class).longValue();
+        jdbc.update(
+                "insert into event_log_entry (id, event_id, log_id, payload) select ? + g, gen_random_uuid(), ?, repeat('x', ?) from generate_series(0, ? - 1) g",
+                first, logId, payloadSize, count);
+        jdbc.queryForObject("select setval('event_log_entry_seq', ?)",
+                Long.class, first + count + 1000);
+        return first;
+    }
+
+    public UUID getEventId(long id) {
+        return jdbc().queryForObject(
+                "select event_id from event_log_entry where id = ?",
+                UUID.class, id);
+    }
+
+    public int countEvents(String logId) {
+        return jdbc().queryForObject(
+                "select count(*) from event_log_entry where log_id = ?",
+                Integer.class, logId).intValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        postgres.close();
+    }
+}
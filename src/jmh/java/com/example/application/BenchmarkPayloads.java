@@ -0,0 +1,68 @@
+package com.example.application;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates JSON resembling what Collaboration Engine stores: map changes
+ * carrying form field values together with the editing user, and snapshots
+ * containing many such entries.
+ */
+public class BenchmarkPayloads {
+    private static final String[] FIELDS = { "firstName", "lastName", "email",
+            "phone", "street", "city", "notes", "status" };
+
+    private static final String[] WORDS = { "customer", "requested", "update",
+            "order", "delivery", "invoice", "address", "contact", "follow",
+            "up", "next", "week", "priority", "pending", "approved" };
+
+    private final Random random = new Random(42);
+
+    /**
+     * Creates an event that puts a value into a map.
+     */
+    public String event() {
+        int user = random.nextInt(20);
+        return "{\"type\":\"m-put\",\"name\":\"form-values\",\"key\":\""
+                + FIELDS[random.nextInt(FIELDS.length)] + "\",\"value\":"
+                + value(user) + ",\"expected-id\":null,\"scope-owner\":\""
+                + new UUID(user, 1) + "\"}";
+    }
+
+    /**
+     * Creates a snapshot with roughly the given number of characters.
+     */
+    public String snapshot(int approximateLength) {
+        StringBuilder builder = new StringBuilder(approximateLength + 1000);
+        builder.append("{\"latest\":\"").append(UUID.randomUUID())
+                .append("\",\"maps\":{\"form-values\":{");
+        int entry = 0;
+        while (builder.length() < approximateLength) {
+            if (entry > 0) {
+                builder.append(',');
+            }
+            int user = random.nextInt(20);
+            builder.append("\"field-").append(entry++)
+                    .append("\":{\"id\":\"").append(UUID.randomUUID())
+                    .append("\",\"data\":").append(value(user))
+                    .append(",\"scope-owner\":\"").append(new UUID(user, 1))
+                    .append("\"}");
+        }
+        return builder.append("}},\"lists\":{}}").toString();
+    }
+
+    private String value(int user) {
+        StringBuilder text = new StringBuilder();
+        int words = 2 + random.nextInt(12);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return "{\"value\":\"" + text + "\",\"user\":{\"id\":\"user-" + user
+                + "\",\"name\":\"User " + user + "\",\"abbreviation\":\"U"
+                + user + "\",\"colorIndex\":" + (user % 7)
+                + ",\"image\":null}}";
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.application;
+
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.collaborationengine.Backend.EventLog;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * Time for a new subscriber to receive a backlog of events through the
+ * backend, including the event id lookup and the paged catch-up queries. The
+ * log has a permanent subscription, like a topic that other users are
+ * already editing, so that the time to start listening isn't included.
+ * Backlogs that fit in the tail cache are served from memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatchUpBenchmark {
+    private static final String LOG_ID = "catch-up-benchmark";
+
+    @Param({ "10", "1000", "100000" })
+    public int backlog;
+
+    private BenchmarkDatabase database;
+    private EventLog eventLog;
+    private UUID newerThan;
+    private Registration anchor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.start();
+        eventLog = database.getBean(PgBackend.class).openEventLog(LOG_ID);
+
+        long first = database.insertEvents(LOG_ID, backlog + 1, 200);
+        newerThan = database.getEventId(first);
+        database.jdbc().execute("vacuum analyze event_log_entry");
+
+        Semaphore received = new Semaphore(0);
+        anchor = eventLog.subscribe(null, (id, payload) -> received.release());
+        received.acquire(backlog + 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        anchor.remove();
+        database.close();
+    }
+
+    @Benchmark
+    public void subscribe() throws Exception {
+        Semaphore received = new Semaphore(0);
+        Registration registration = eventLog.subscribe(newerThan,
+                (id, payload) -> received.release());
+        try {
+            if (!received.tryAcquire(backlog, 60, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Backlog was not delivered");
+            }
+        } finally {
+            registration.remove();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.application;
+
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.collaborationengine.Backend.EventLog;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * Measures the full path of an event from submission through the batched
+ * insert, NOTIFY and dispatch until it reaches a subscriber. The latency
+ * benchmark submits one event at a time and reports percentiles. The
+ * throughput benchmark has several threads submitting on a topic each so that
+ * their events share batches, which either draw ids from the shared sequence
+ * or count positions for each topic.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeliveryBenchmark {
+    @State(Scope.Thread)
+    public static class Topic {
+        private final Semaphore delivered = new Semaphore(0);
+        private final String payload = new BenchmarkPayloads().event();
+
+        private EventLog eventLog;
+        private Registration registration;
+
+        @Setup(Level.Trial)
+        public void setUp(DeliveryBenchmark benchmark) throws Exception {
+            eventLog = benchmark.backend.openEventLog(
+                    "delivery-" + benchmark.topicCounter.incrementAndGet());
+            registration = eventLog.subscribe(null,
+                    (id, payload) -> delivered.release());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            registration.remove();
+        }
+
+        void submitAndAwait() throws InterruptedException {
+            eventLog.submitEvent(UUID.randomUUID(), payload);
+            if (!delivered.tryAcquire(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Event was not delivered");
+            }
+        }
+    }
+
+    @Param({ "true", "false" })
+    public boolean inlinePayloads;
+
+    @Param({ "global", "per-log" })
+    public String sequenceMode;
+
+    private final AtomicInteger topicCounter = new AtomicInteger();
+
+    private BenchmarkDatabase database;
+    private PgBackend backend;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.start(
+                "pg-backend.inline-payloads=" + inlinePayloads,
+                "pg-backend.sequence-mode=" + sequenceMode);
+        backend = database.getBean(PgBackend.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @Threads(1)
+    public void latency(Topic topic) throws InterruptedException {
+        topic.submitAndAwait();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(8)
+    public void throughput(Topic topic) throws InterruptedException {
+        topic.submitAndAwait();
+    }
+}
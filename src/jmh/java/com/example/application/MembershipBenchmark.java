@@ -0,0 +1,67 @@
+package com.example.application;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a single heartbeat while the given number of simulated nodes hold
+ * a lease. Each invocation renews the lease of the next simulated node, so
+ * the database load of a cluster is roughly the score multiplied by the
+ * number of nodes divided by the heartbeat interval.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MembershipBenchmark {
+    private static final Duration LEASE = Duration.ofHours(1);
+
+    @Param({ "100", "1000" })
+    public int nodes;
+
+    private BenchmarkDatabase database;
+    private ClusterNodeRepository repository;
+    private List<UUID> nodeIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.start();
+        repository = database.getBean(ClusterNodeRepository.class);
+
+        database.jdbc().update(
+                "insert into cluster_node (node_id, lease_expires) select gen_random_uuid(), now() + interval '1 hour' from generate_series(1, ?)",
+                nodes);
+        nodeIds = database.jdbc()
+                .queryForList("select node_id from cluster_node", UUID.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public List<UUID> heartbeat() {
+        UUID nodeId = nodeIds.get(next++ % nodeIds.size());
+        return repository.heartbeat(nodeId, LEASE);
+    }
+}
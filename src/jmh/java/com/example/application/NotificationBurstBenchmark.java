@@ -0,0 +1,149 @@
+package com.example.application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.collaborationengine.Backend.EventLog;
+import com.vaadin.flow.shared.Registration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Submits a burst of events to one topic from concurrent threads, each in a
+ * transaction and notification of its own as if the events came from many
+ * nodes, and measures the time until a subscriber has received the whole
+ * burst. The number of notifications sent, the number of times the
+ * dispatcher of the log ran to handle them and the number of queries run to
+ * deliver them are reported as secondary results. A coalescing window lets
+ * notifications that arrive over several reads share a wakeup, and the
+ * queries are mostly visible without inline payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class NotificationBurstBenchmark {
+    private static final int BURST = 500;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counts {
+        public long notifications;
+        public long wakeups;
+        public long queries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            notifications = 0;
+            wakeups = 0;
+            queries = 0;
+        }
+    }
+
+    @Param({ "0", "5ms" })
+    public String coalesceWindow;
+
+    @Param({ "true", "false" })
+    public boolean inlinePayloads;
+
+    private final Semaphore delivered = new Semaphore(0);
+    private final String payload = new BenchmarkPayloads().event();
+
+    private BenchmarkDatabase database;
+    private MeterRegistry registry;
+    private EventLog eventLog;
+    private Registration registration;
+    private ExecutorService submitters;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.start(
+                "pg-backend.listener.coalesce-window=" + coalesceWindow,
+                "pg-backend.inline-payloads=" + inlinePayloads,
+                "pg-backend.submit.max-batch-size=1");
+        registry = database.getBean(MeterRegistry.class);
+        eventLog = database.getBean(PgBackend.class)
+                .openEventLog("notification-burst");
+        registration = eventLog.subscribe(null,
+                (id, payload) -> delivered.release());
+        submitters = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        submitters.shutdown();
+        registration.remove();
+        database.close();
+    }
+
+    /**
+     * Counts the runs of the dispatcher, which records its lag once per run.
+     */
+    private long countDispatches() {
+        return registry.get("pg.backend.dispatch.lag").timer().count();
+    }
+
+    private long countQueries() {
+        return count("pg.backend.catchup.rows")
+                + count("pg.backend.backfill.rows");
+    }
+
+    private long count(String summary) {
+        return registry.get(summary).summary().count();
+    }
+
+    @Benchmark
+    public void burst(Counts counts)
+            throws InterruptedException, ExecutionException {
+        long notificationsBefore = count("pg.backend.submit.batch.size");
+        long wakeupsBefore = countDispatches();
+        long queriesBefore = countQueries();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> submits = new ArrayList<>(BURST);
+        for (int i = 0; i < BURST; i++) {
+            submits.add(submitters.submit(() -> {
+                start.await();
+                eventLog.submitEvent(UUID.randomUUID(), payload);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> submit : submits) {
+            submit.get();
+        }
+        if (!delivered.tryAcquire(BURST, 60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Burst was not delivered");
+        }
+
+        counts.notifications += count("pg.backend.submit.batch.size")
+                - notificationsBefore;
+        counts.wakeups += countDispatches() - wakeupsBefore;
+        counts.queries += countQueries() - queriesBefore;
+    }
+}
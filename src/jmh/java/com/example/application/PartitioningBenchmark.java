@@ -0,0 +1,117 @@
+package com.example.application;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the plain event table with hash partitioning and with hash and
+ * time partitioning on a table with many logs. The default size runs in a
+ * few minutes, use e.g. <code>-p rows=300000000</code> to see the effect at
+ * production scale, which needs plenty of disk and setup time. Rows of the
+ * time partitioned layout are spread over three partitions per log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitioningBenchmark {
+    private static final String INSERT = "insert into event_log_entry (id, event_id, log_id, payload) values (nextval('event_log_entry_seq'), ?, ?, ?)";
+
+    private static final String PAYLOAD = "x".repeat(200);
+
+    @Param({ "plain", "hash", "hash-time" })
+    public String layout;
+
+    @Param({ "2000000" })
+    public long rows;
+
+    @Param({ "1000" })
+    public int logs;
+
+    private BenchmarkDatabase database;
+    private EventLogStorage eventLogs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        boolean partitioned = !layout.equals("plain");
+        boolean byTime = layout.equals("hash-time");
+        database = BenchmarkDatabase.start("pg-backend.storage=jdbc",
+                "pg-backend.partitioning.enabled=" + partitioned,
+                "pg-backend.partitioning.time-interval="
+                        + (byTime ? "1h" : "0"));
+        eventLogs = database.getBean(EventLogStorage.class);
+
+        // Log k gets the ids k, k + logs, k + 2 * logs and so on
+        if (byTime) {
+            database.jdbc().update(
+                    "insert into event_log_entry (id, event_id, log_id, payload, created_at) "
+                            + "select g, gen_random_uuid(), 'log-' || (g % ?), ?, now() + (g::float / ?) * interval '2 hours' "
+                            + "from generate_series(1, ?) g",
+                    logs, PAYLOAD, rows, rows);
+        } else {
+            database.jdbc().update(
+                    "insert into event_log_entry (id, event_id, log_id, payload) "
+                            + "select g, gen_random_uuid(), 'log-' || (g % ?), ? "
+                            + "from generate_series(1, ?) g",
+                    logs, PAYLOAD, rows);
+        }
+        database.jdbc().queryForObject("select setval('event_log_entry_seq', ?)",
+                Long.class, rows + 1000);
+        database.jdbc().execute("vacuum analyze event_log_entry");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    private String randomLog() {
+        return "log-" + ThreadLocalRandom.current().nextInt(logs);
+    }
+
+    /**
+     * Reads the latest 100 events of a log, as when a subscriber that has
+     * been disconnected for a while catches up.
+     */
+    @Benchmark
+    public List<EventLogEntry> catchUp() {
+        int log = ThreadLocalRandom.current().nextInt(logs);
+        long from = rows - 100L * logs + log;
+        return eventLogs.findPageNewerThan(from, "log-" + log, 500);
+    }
+
+    @Benchmark
+    public int insert() {
+        return database.jdbc().update(INSERT, UUID.randomUUID(), randomLog(),
+                PAYLOAD);
+    }
+
+    /**
+     * Looks up an event by id within its log, which only probes the event id
+     * index of the log's partition.
+     */
+    @Benchmark
+    public Optional<Long> lookupSequenceId() {
+        return eventLogs.getSequenceIdByEventId(randomLog(),
+                UUID.randomUUID());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.application;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.vaadin.collaborationengine.Backend.Snapshot;
+
+/**
+ * Compares the text and binary payload storage formats for typical
+ * Collaboration Engine events and snapshots. Reads include decoding, and the
+ * encode and decode benchmarks isolate the CPU cost of the format. The
+ * read benchmarks also report storage sizes as secondary results: bytes on
+ * disk per event and per snapshot including TOAST, and bytes transferred per
+ * event and per snapshot when reading the payload columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadStorageBenchmark {
+    private static final String LOG_ID = "payload-benchmark";
+
+    private static final int EVENTS = 5000;
+
+    /**
+     * Storage sizes measured when setting up the trial.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long eventDiskBytes;
+        public long eventWireBytes;
+        public long snapshotDiskBytes;
+        public long snapshotWireBytes;
+
+        @Setup(Level.Iteration)
+        public void copy(PayloadStorageBenchmark benchmark) {
+            eventDiskBytes = benchmark.eventDiskBytes;
+            eventWireBytes = benchmark.eventWireBytes;
+            snapshotDiskBytes = benchmark.snapshotDiskBytes;
+            snapshotWireBytes = benchmark.snapshotWireBytes;
+        }
+    }
+
+    @Param({ "text", "binary" })
+    public String format;
+
+    @Param({ "100000" })
+    public int snapshotLength;
+
+    private BenchmarkDatabase database;
+    private EventLogStorage eventLogs;
+    private SnapshotRepository snapshots;
+
+    private String event;
+    private PayloadCodec codec;
+    private PayloadCodec.Stored storedSnapshot;
+    private long eventDiskBytes;
+    private long eventWireBytes;
+    private long snapshotDiskBytes;
+    private long snapshotWireBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase
+                .start("pg-backend.payload-storage.format=" + format);
+        eventLogs = database.getBean(EventLogStorage.class);
+        snapshots = database.getBean(SnapshotRepository.class);
+        PgBackend backend = database.getBean(PgBackend.class);
+
+        BenchmarkPayloads payloads = new BenchmarkPayloads();
+        event = payloads.event();
+        for (int i = 0; i < EVENTS; i++) {
+            backend.openEventLog(LOG_ID).submitEvent(UUID.randomUUID(),
+                    payloads.event());
+        }
+        while (database.countEvents(LOG_ID) < EVENTS) {
+            Thread.sleep(100);
+        }
+
+        String snapshot = payloads.snapshot(snapshotLength);
+        for (int i = 0; i < 100; i++) {
+            backend.replaceSnapshot("snapshot-" + i, null, UUID.randomUUID(),
+                    snapshot).get();
+        }
+
+        codec = new PayloadCodec(database.getBean(PgBackendProperties.class)
+                .getPayloadStorage());
+        storedSnapshot = codec.store(snapshot);
+
+        database.jdbc().execute("vacuum analyze");
+        eventDiskBytes = database.jdbc().queryForObject(
+                "select pg_table_size('event_log_entry')", Long.class)
+                / EVENTS;
+        eventWireBytes = Math.round(database.jdbc().queryForObject(
+                "select avg(coalesce(octet_length(payload), 0) + coalesce(octet_length(payload_data), 0)) from event_log_entry",
+                Double.class));
+        snapshotDiskBytes = database.jdbc().queryForObject(
+                "select pg_table_size('snapshot')", Long.class) / 100;
+        snapshotWireBytes = Math.round(database.jdbc().queryForObject(
+                "select avg(coalesce(octet_length(payload), 0) + coalesce(octet_length(payload_data), 0)) from snapshot",
+                Double.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public void catchUp(Blackhole blackhole, Sizes sizes) {
+        eventLogs.streamNewerThan(-1, LOG_ID, 500, blackhole::consume);
+    }
+
+    @Benchmark
+    public Snapshot loadSnapshot(Sizes sizes) {
+        return snapshots.findById("snapshot-0").get().asSnapshot();
+    }
+
+    @Benchmark
+    public PayloadCodec.Stored encodeEvent() {
+        return codec.store(event);
+    }
+
+    @Benchmark
+    public String decodeSnapshot() {
+        return PayloadCodec.decode(storedSnapshot.text(),
+                storedSnapshot.data());
+    }
+}
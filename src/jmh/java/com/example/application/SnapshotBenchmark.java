@@ -0,0 +1,80 @@
+package com.example.application;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.collaborationengine.Backend.Snapshot;
+
+/**
+ * Snapshot operations through the backend: replacing the snapshot of a log
+ * that the node keeps writing, loading it from the snapshot cache and loading
+ * it from the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBenchmark {
+    private static final String LOG_ID = "snapshot-benchmark";
+
+    @Param({ "1000", "100000" })
+    public int snapshotLength;
+
+    private BenchmarkDatabase database;
+    private PgBackend backend;
+    private SnapshotRepository snapshots;
+    private String payload;
+    private UUID currentId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.start();
+        backend = database.getBean(PgBackend.class);
+        snapshots = database.getBean(SnapshotRepository.class);
+
+        payload = new BenchmarkPayloads().snapshot(snapshotLength);
+        currentId = UUID.randomUUID();
+        backend.replaceSnapshot(LOG_ID, null, currentId, payload).get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public boolean replace() throws Exception {
+        UUID newId = UUID.randomUUID();
+        boolean replaced = backend
+                .tryReplaceSnapshot(LOG_ID, currentId, newId, payload).get()
+                .booleanValue();
+        currentId = newId;
+        return replaced;
+    }
+
+    @Benchmark
+    public Snapshot loadCached() throws Exception {
+        return backend.loadLatestSnapshot(LOG_ID).get();
+    }
+
+    @Benchmark
+    public Snapshot loadUncached() {
+        return snapshots.findById(LOG_ID).get().asSnapshot();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.application;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the JPA and plain JDBC storage implementations on the reads done
+ * when delivering notifications and when subscribing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    private static final String LOG_ID = "storage-benchmark";
+
+    @Param({ "jpa", "jdbc" })
+    public String storage;
+
+    @Param({ "1", "100" })
+    public int events;
+
+    private BenchmarkDatabase database;
+    private EventLogStorage eventLogs;
+    private long catchUpFrom;
+    private UUID lastEventId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.start("pg-backend.storage=" + storage);
+        eventLogs = database.getBean(EventLogStorage.class);
+
+        database.insertEvents(LOG_ID, 10_000, 200);
+        long first = database.insertEvents(LOG_ID, events, 200);
+        catchUpFrom = first - 1;
+        lastEventId = database.getEventId(first + events - 1);
+        database.jdbc().execute("vacuum analyze event_log_entry");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public void catchUp(Blackhole blackhole) {
+        eventLogs.streamNewerThan(catchUpFrom, LOG_ID, 500, blackhole::consume);
+    }
+
+    @Benchmark
+    public Optional<Long> lookupSequenceId() {
+        return eventLogs.getSequenceIdByEventId(LOG_ID, lastEventId);
+    }
+}
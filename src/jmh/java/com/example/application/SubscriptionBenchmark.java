@@ -0,0 +1,92 @@
+package com.example.application;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.vaadin.collaborationengine.Backend.EventLog;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * Measures subscribe and unsubscribe throughput when many threads work
+ * concurrently, either on a topic each or all on the same topic. Each topic
+ * has a permanent subscription so that catching up is served from the tail
+ * cache. Run with <code>-t 1</code> for a single-threaded baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class SubscriptionBenchmark {
+    @State(Scope.Thread)
+    public static class Topic {
+        private EventLog eventLog;
+        private Registration anchor;
+
+        @Setup(Level.Trial)
+        public void setUp(SubscriptionBenchmark benchmark) throws Exception {
+            String logId = benchmark.sharedTopic ? "topic"
+                    : "topic-" + benchmark.topicCounter.incrementAndGet();
+            eventLog = benchmark.backend.openEventLog(logId);
+            anchor = eventLog.subscribe(null, (id, payload) -> {
+            });
+            for (int i = 0; i < 20; i++) {
+                eventLog.submitEvent(UUID.randomUUID(), "{}");
+            }
+            while (benchmark.database.countEvents(logId) < 20) {
+                Thread.sleep(10);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            anchor.remove();
+        }
+    }
+
+    @Param({ "false", "true" })
+    public boolean sharedTopic;
+
+    private final AtomicInteger topicCounter = new AtomicInteger();
+
+    private BenchmarkDatabase database;
+    private PgBackend backend;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.start();
+        backend = database.getBean(PgBackend.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public void subscribeAndUnsubscribe(Topic topic, Blackhole blackhole)
+            throws Exception {
+        Registration registration = topic.eventLog.subscribe(null,
+                (id, payload) -> blackhole.consume(payload));
+        registration.remove();
+    }
+}
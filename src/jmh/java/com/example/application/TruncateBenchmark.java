@@ -0,0 +1,72 @@
+package com.example.application;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Catch-up latency for a subscriber that is 100 events behind, as a function
+ * of how much older history the log has accumulated, with and without
+ * truncating that history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TruncateBenchmark {
+    private static final String LOG_ID = "truncate-benchmark";
+
+    @Param({ "10000", "100000", "1000000" })
+    public int history;
+
+    @Param({ "false", "true" })
+    public boolean truncated;
+
+    private BenchmarkDatabase database;
+    private EventLogStorage eventLogs;
+    private long catchUpFrom;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.start();
+        eventLogs = database.getBean(EventLogStorage.class);
+
+        database.insertEvents(LOG_ID, history, 200);
+        long recent = database.insertEvents(LOG_ID, 100, 200);
+        catchUpFrom = recent - 1;
+
+        if (truncated) {
+            database.getBean(PgBackend.class).openEventLog(LOG_ID)
+                    .truncate(database.getEventId(recent));
+            while (database.countEvents(LOG_ID) > 100) {
+                Thread.sleep(100);
+            }
+        }
+        database.jdbc().execute("vacuum analyze event_log_entry");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public void catchUp(Blackhole blackhole) {
+        eventLogs.streamNewerThan(catchUpFrom, LOG_ID, 500, blackhole::consume);
+    }
+}
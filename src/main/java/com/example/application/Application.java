@@ -2,8 +2,11 @@ package com.example.application;
 
 import java.io.Serializable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 
 import com.vaadin.collaborationengine.CollaborationEngineConfiguration;
@@ -26,9 +29,12 @@ import jakarta.servlet.http.HttpSessionEvent;
  *
  */
 @SpringBootApplication
+@EnableConfigurationProperties(PgBackendProperties.class)
 @Theme(value = "pg")
 @Push
 public class Application implements AppShellConfigurator {
+    private static final Logger logger = LoggerFactory
+            .getLogger(Application.class);
 
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
@@ -37,7 +43,7 @@ public class Application implements AppShellConfigurator {
     @Bean
     CollaborationEngineConfiguration ceConfig(PgBackend backend) {
         CollaborationEngineConfiguration config = new CollaborationEngineConfiguration(event -> {
-           System.out.println(event); 
+           logger.warn("Collaboration Engine license event: {}", event.getMessage());
         });
         
         config.setBackend(backend);
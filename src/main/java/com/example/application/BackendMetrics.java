@@ -0,0 +1,234 @@
+package com.example.application;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+import com.example.application.PgBackendProperties.Delivery.OverflowPolicy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters for the backend. All meters are named
+ * <code>pg.backend.*</code> and only use tags with a fixed set of values. The
+ * meters are created once so that recording on the hot paths is a plain
+ * method call without lookups or allocation. Percentile histograms can be
+ * enabled with
+ * <code>management.metrics.distribution.percentiles-histogram.pg.backend=true</code>.
+ */
+public class BackendMetrics {
+    private final MeterRegistry registry;
+
+    private final Timer submitLatency;
+    private final DistributionSummary submitBatchSize;
+    private final Counter submitFailures;
+    private final DistributionSummary notificationFanOut;
+    private final Timer dispatchLag;
+    private final DistributionSummary catchUpRows;
+    private final DistributionSummary backfillRows;
+    private final Counter lateEvents;
+    private final Timer snapshotLoadHit;
+    private final Timer snapshotLoadMiss;
+    private final Timer snapshotReplaced;
+    private final Timer snapshotConflict;
+    private final Timer snapshotSkipped;
+    private final DistributionSummary logSubscribers;
+    private final DistributionSummary deliveryQueueDepth;
+    private final Map<OverflowPolicy, Counter> deliveryOverflows = new EnumMap<>(
+            OverflowPolicy.class);
+
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private final AtomicLong queuedEvents = new AtomicLong();
+
+    public BackendMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        submitLatency = Timer.builder("pg.backend.submit.latency")
+                .description(
+                        "Time from submitting an event until its batch is committed")
+                .register(registry);
+        submitBatchSize = DistributionSummary
+                .builder("pg.backend.submit.batch.size")
+                .description("Number of events written per transaction")
+                .baseUnit("events").register(registry);
+        submitFailures = Counter.builder("pg.backend.submit.failures")
+                .description("Events that failed to be written")
+                .baseUnit("events").register(registry);
+        notificationFanOut = DistributionSummary
+                .builder("pg.backend.notification.fanout")
+                .description(
+                        "Number of local subscriptions each notification is dispatched to")
+                .baseUnit("subscriptions").register(registry);
+        dispatchLag = Timer.builder("pg.backend.dispatch.lag")
+                .description(
+                        "Time from receiving a notification until a dispatcher thread handles it")
+                .register(registry);
+        catchUpRows = DistributionSummary.builder("pg.backend.catchup.rows")
+                .description("Number of events returned per catch-up query")
+                .baseUnit("events").register(registry);
+        backfillRows = DistributionSummary.builder("pg.backend.backfill.rows")
+                .description(
+                        "Number of events returned per query for skipped sequence ids")
+                .baseUnit("events").register(registry);
+        lateEvents = Counter.builder("pg.backend.events.late")
+                .description(
+                        "Events delivered after events with higher sequence ids since they committed later")
+                .baseUnit("events").register(registry);
+
+        snapshotLoadHit = snapshotLoad("hit");
+        snapshotLoadMiss = snapshotLoad("miss");
+        snapshotReplaced = snapshotReplace("replaced");
+        snapshotConflict = snapshotReplace("conflict");
+        snapshotSkipped = snapshotReplace("skipped");
+
+        logSubscribers = DistributionSummary
+                .builder("pg.backend.log.subscribers")
+                .description(
+                        "Number of local subscriptions to a log, recorded whenever it changes")
+                .baseUnit("subscriptions").register(registry);
+        Gauge.builder("pg.backend.subscriptions", subscriptions,
+                AtomicInteger::get)
+                .description("Number of local subscriptions to all logs")
+                .register(registry);
+
+        deliveryQueueDepth = DistributionSummary
+                .builder("pg.backend.delivery.queue.depth")
+                .description(
+                        "Number of events in the delivery queue of a subscription, recorded whenever an event is added")
+                .baseUnit("events").register(registry);
+        Gauge.builder("pg.backend.delivery.queued", queuedEvents,
+                AtomicLong::get)
+                .description(
+                        "Number of events waiting in the delivery queues of all subscriptions")
+                .register(registry);
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            deliveryOverflows.put(policy, Counter
+                    .builder("pg.backend.delivery.overflows")
+                    .description(
+                            "Number of times the delivery queue of a subscription was full")
+                    .tag("policy", policy.name().toLowerCase())
+                    .register(registry));
+        }
+    }
+
+    private Timer snapshotLoad(String result) {
+        return Timer.builder("pg.backend.snapshot.load")
+                .description("Time to load the latest snapshot of a log")
+                .tag("result", result).register(registry);
+    }
+
+    private Timer snapshotReplace(String outcome) {
+        return Timer.builder("pg.backend.snapshot.replace")
+                .description("Time to replace the snapshot of a log")
+                .tag("outcome", outcome).register(registry);
+    }
+
+    /**
+     * Registers a gauge that reads its value from an object when sampled.
+     */
+    public <T> void gauge(String name, String description, T object,
+            ToDoubleFunction<T> value) {
+        Gauge.builder(name, object, value).description(description)
+                .register(registry);
+    }
+
+    /**
+     * Registers a counter that reads its monotonically increasing value from
+     * an object when sampled.
+     */
+    public <T> void counter(String name, String description, T object,
+            ToDoubleFunction<T> value) {
+        FunctionCounter.builder(name, object, value).description(description)
+                .register(registry);
+    }
+
+    /**
+     * Registers a gauge that reads a duration in the given unit from an
+     * object when sampled.
+     */
+    public <T> void timeGauge(String name, String description, T object,
+            TimeUnit unit, ToDoubleFunction<T> value) {
+        TimeGauge.builder(name, object, unit, value).description(description)
+                .register(registry);
+    }
+
+    public void submitted(long submittedNanos, long committedNanos) {
+        submitLatency.record(committedNanos - submittedNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    public void batchWritten(int size) {
+        submitBatchSize.record(size);
+    }
+
+    public void submitFailed() {
+        submitFailures.increment();
+    }
+
+    public void notificationDispatched(int subscriptionCount) {
+        notificationFanOut.record(subscriptionCount);
+    }
+
+    public void dispatchStarted(long scheduledNanos) {
+        dispatchLag.record(System.nanoTime() - scheduledNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    public void catchUpPageRead(int rows) {
+        catchUpRows.record(rows);
+    }
+
+    public void backfillRead(int rows) {
+        backfillRows.record(rows);
+    }
+
+    public void lateEventDelivered() {
+        lateEvents.increment();
+    }
+
+    public void snapshotLoaded(boolean cached, long startNanos) {
+        (cached ? snapshotLoadHit : snapshotLoadMiss).record(
+                System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void snapshotReplaceAttempted(boolean replaced, long startNanos) {
+        (replaced ? snapshotReplaced : snapshotConflict).record(
+                System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a replacement that was rejected without querying the database
+     * since the expected snapshot was known to be outdated.
+     */
+    public void snapshotReplaceSkipped(long startNanos) {
+        snapshotSkipped.record(System.nanoTime() - startNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    public void eventQueued(int depth) {
+        queuedEvents.incrementAndGet();
+        deliveryQueueDepth.record(depth);
+    }
+
+    public void eventsDequeued(int count) {
+        queuedEvents.addAndGet(-count);
+    }
+
+    public void deliveryOverflowed(OverflowPolicy policy) {
+        deliveryOverflows.get(policy).increment();
+    }
+
+    public void subscriptionCountChanged(int delta, int logSubscriptionCount) {
+        subscriptions.addAndGet(delta);
+        logSubscribers.record(logSubscriptionCount);
+    }
+}
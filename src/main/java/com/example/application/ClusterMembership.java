@@ -0,0 +1,278 @@
+package com.example.application;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vaadin.collaborationengine.CollaborationEngine;
+import com.vaadin.collaborationengine.MembershipEvent;
+import com.vaadin.collaborationengine.MembershipEvent.MembershipEventType;
+import com.vaadin.collaborationengine.MembershipListener;
+import com.vaadin.flow.shared.Registration;
+
+/**
+ * Tracks which other nodes are part of the cluster. Each node renews a lease
+ * in the <code>cluster_node</code> table from a background thread and
+ * announces on a shared channel when it joins and leaves. A node that stops
+ * renewing its lease, e.g. because it crashed, is considered to have left
+ * once the lease has expired, which is detected at most one heartbeat
+ * interval later.
+ */
+public class ClusterMembership implements AutoCloseable {
+    /**
+     * The channel on which nodes announce that they join or leave.
+     */
+    public static final String CHANNEL = "ce_membership";
+
+    private static final String JOIN = "join:";
+    private static final String LEAVE = "leave:";
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ClusterMembership.class);
+
+    private final ExecutorService eventExecutor = Executors
+            .newSingleThreadExecutor(Thread.ofVirtual()
+                    .name("cluster-membership-events").factory());
+
+    private final UUID nodeId;
+    private final ClusterNodeRepository nodes;
+    private final PgNotifyListener notifyListener;
+    private final Supplier<CollaborationEngine> collaborationEngine;
+    private final PgBackendProperties.Membership settings;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Other nodes that are members, with the time when each was first seen
+     * as <code>System.nanoTime()</code>.
+     */
+    private final Map<UUID, Long> members = new HashMap<>();
+
+    /**
+     * Nodes that have announced leaving, with the time of the announcement,
+     * to ignore them in heartbeat results that are older than that.
+     */
+    private final Map<UUID, Long> departed = new HashMap<>();
+
+    private final Set<MembershipListener> listeners = new HashSet<>();
+
+    private final CountDownLatch closing = new CountDownLatch(1);
+
+    private final Thread heartbeatThread;
+
+    public ClusterMembership(UUID nodeId, ClusterNodeRepository nodes,
+            PgNotifyListener notifyListener,
+            Supplier<CollaborationEngine> collaborationEngine,
+            PgBackendProperties.Membership settings) {
+        this.nodeId = nodeId;
+        this.nodes = nodes;
+        this.notifyListener = notifyListener;
+        this.collaborationEngine = collaborationEngine;
+        this.settings = settings;
+
+        notifyListener.listen(CHANNEL, this::handleNotification);
+        heartbeatThread = Thread.ofVirtual().name("cluster-membership")
+                .start(this::run);
+    }
+
+    private void run() {
+        boolean announced = false;
+        do {
+            long started = System.nanoTime();
+            try {
+                List<UUID> live = nodes.heartbeat(nodeId,
+                        settings.getLeaseDuration());
+                if (!announced) {
+                    notifyListener.notify(CHANNEL, JOIN + nodeId);
+                    announced = true;
+                }
+                update(live, started);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to renew cluster membership lease", e);
+            }
+        } while (!awaitClosing());
+    }
+
+    private boolean awaitClosing() {
+        try {
+            return closing.await(settings.getHeartbeatInterval().toMillis(),
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Reconciles the members with the result of a heartbeat. Nodes that were
+     * announced after the query started are kept even if the result doesn't
+     * include them.
+     */
+    private void update(List<UUID> live, long queryStarted) {
+        try {
+            lock.lock();
+            Set<UUID> liveIds = new HashSet<>(live);
+            liveIds.remove(nodeId);
+
+            Iterator<Map.Entry<UUID, Long>> departures = departed.entrySet()
+                    .iterator();
+            while (departures.hasNext()) {
+                Map.Entry<UUID, Long> departure = departures.next();
+                if (!liveIds.remove(departure.getKey())
+                        && departure.getValue().longValue() < queryStarted) {
+                    // Gone from the table, so it can't reappear
+                    departures.remove();
+                }
+            }
+
+            Iterator<Map.Entry<UUID, Long>> current = members.entrySet()
+                    .iterator();
+            while (current.hasNext()) {
+                Map.Entry<UUID, Long> member = current.next();
+                if (!liveIds.remove(member.getKey())
+                        && member.getValue().longValue() < queryStarted) {
+                    current.remove();
+                    fire(MembershipEventType.LEAVE, member.getKey());
+                }
+            }
+
+            // Remaining ids are new members
+            for (UUID id : liveIds) {
+                members.put(id, Long.valueOf(System.nanoTime()));
+                fire(MembershipEventType.JOIN, id);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void handleNotification(String payload) {
+        boolean join = payload.startsWith(JOIN);
+        if (!join && !payload.startsWith(LEAVE)) {
+            return;
+        }
+        UUID id;
+        try {
+            id = UUID.fromString(payload
+                    .substring((join ? JOIN : LEAVE).length()));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        if (id.equals(nodeId)) {
+            return;
+        }
+
+        try {
+            lock.lock();
+            if (join) {
+                if (!departed.containsKey(id) && members.putIfAbsent(id,
+                        Long.valueOf(System.nanoTime())) == null) {
+                    fire(MembershipEventType.JOIN, id);
+                }
+            } else {
+                departed.put(id, Long.valueOf(System.nanoTime()));
+                if (members.remove(id) != null) {
+                    fire(MembershipEventType.LEAVE, id);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a listener that is notified when other nodes join or leave. The
+     * listener immediately receives a join event for each current member.
+     */
+    public Registration addListener(MembershipListener listener) {
+        try {
+            lock.lock();
+            listeners.add(listener);
+            for (UUID id : members.keySet()) {
+                fire(List.of(listener), MembershipEventType.JOIN, id);
+            }
+            return () -> {
+                try {
+                    lock.lock();
+                    listeners.remove(listener);
+                } finally {
+                    lock.unlock();
+                }
+            };
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the ids of the other nodes that are currently members.
+     */
+    public Set<UUID> getMembers() {
+        try {
+            lock.lock();
+            return Set.copyOf(members.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fire(MembershipEventType type, UUID id) {
+        if (!listeners.isEmpty()) {
+            fire(new ArrayList<>(listeners), type, id);
+        }
+    }
+
+    /**
+     * Delivers an event on the event thread. Called while holding the lock so
+     * that events are delivered in the order they happened.
+     */
+    private void fire(List<MembershipListener> targets,
+            MembershipEventType type, UUID id) {
+        eventExecutor.execute(() -> {
+            CollaborationEngine source = collaborationEngine.get();
+            if (source == null) {
+                return;
+            }
+            MembershipEvent event = new MembershipEvent(type, id, source);
+            for (MembershipListener listener : targets) {
+                try {
+                    listener.handleMembershipEvent(event);
+                } catch (RuntimeException e) {
+                    logger.warn("Membership listener failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops renewing the lease and announces that this node leaves so that
+     * other nodes don't need to wait for the lease to expire.
+     */
+    @Override
+    public void close() {
+        closing.countDown();
+        try {
+            heartbeatThread.join(settings.getLeaseDuration());
+            nodes.deleteById(nodeId);
+            notifyListener.notify(CHANNEL, LEAVE + nodeId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to leave the cluster", e);
+        }
+        eventExecutor.shutdown();
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.application;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * A node that is part of the cluster for as long as it keeps renewing its
+ * lease.
+ */
+@Entity(name = "ClusterNode")
+public class ClusterNodeEntity {
+    @Id
+    private UUID nodeId;
+
+    private Instant leaseExpires;
+
+    public ClusterNodeEntity() {
+        // Hibernate constructor
+    }
+}
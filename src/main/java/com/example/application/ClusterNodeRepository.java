@@ -0,0 +1,11 @@
+package com.example.application;
+
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ClusterNodeRepository extends
+        JpaRepository<ClusterNodeEntity, UUID>, ClusterNodeRepositoryCustom {
+}
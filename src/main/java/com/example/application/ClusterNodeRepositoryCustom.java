@@ -0,0 +1,21 @@
+package com.example.application;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Cluster node operations that can't be expressed as JPA queries.
+ */
+public interface ClusterNodeRepositoryCustom {
+    /**
+     * Renews the lease of a node, deletes the rows of other nodes whose lease
+     * has expired and finds the nodes that currently have a lease, all in a
+     * single statement. Lease times are based on the database clock so that
+     * clock skew between nodes doesn't matter.
+     *
+     * @return the ids of all nodes with a lease, possibly not including the
+     *         given node if it didn't have a lease before
+     */
+    List<UUID> heartbeat(UUID nodeId, Duration leaseDuration);
+}
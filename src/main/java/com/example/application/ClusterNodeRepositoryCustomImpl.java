@@ -0,0 +1,37 @@
+package com.example.application;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Implements heartbeats as one statement so that each node only needs a
+ * single round trip per heartbeat interval.
+ */
+public class ClusterNodeRepositoryCustomImpl
+        implements ClusterNodeRepositoryCustom {
+    private static final String HEARTBEAT = """
+            with renewed as (
+                insert into cluster_node (node_id, lease_expires)
+                values (?, now() + ? * interval '1 millisecond')
+                on conflict (node_id) do update set lease_expires = excluded.lease_expires
+            ), expired as (
+                delete from cluster_node where lease_expires < now() and node_id <> ?
+            )
+            select node_id from cluster_node where lease_expires >= now()""";
+
+    private final JdbcTemplate jdbc;
+
+    public ClusterNodeRepositoryCustomImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public List<UUID> heartbeat(UUID nodeId, Duration leaseDuration) {
+        // The select sees the table as it was before the statement
+        return jdbc.queryForList(HEARTBEAT, UUID.class, nodeId,
+                leaseDuration.toMillis(), nodeId);
+    }
+}
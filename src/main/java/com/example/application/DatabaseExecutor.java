@@ -0,0 +1,116 @@
+package com.example.application;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking database operations on virtual threads so that callers, often
+ * UI threads holding a session lock, don't have to wait for them. Limits how
+ * many operations run concurrently and how many may wait for their turn.
+ * Operations that are rejected or don't complete in time fail their future
+ * instead of holding up the caller.
+ */
+public class DatabaseExecutor implements AutoCloseable {
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("pg-backend-db-", 0).factory());
+
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final PgBackendProperties.Async settings;
+
+    public DatabaseExecutor(PgBackendProperties.Async settings) {
+        this.settings = settings;
+        permits = new Semaphore(settings.getMaxConcurrency());
+    }
+
+    /**
+     * Schedules an operation to run asynchronously.
+     *
+     * @return a future that is completed with the result of the operation, or
+     *         completed exceptionally if the operation fails, if too many
+     *         operations are already waiting or if the operation doesn't
+     *         complete within the configured timeout
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> operation) {
+        if (queued.incrementAndGet() > settings.getMaxQueued()) {
+            queued.decrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Too many pending database operations"));
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(operation, future));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.orTimeout(settings.getTimeout().toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private <T> void run(Callable<T> operation, CompletableFuture<T> future) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            future.completeExceptionally(e);
+            return;
+        } finally {
+            queued.decrementAndGet();
+        }
+
+        T result;
+        try {
+            if (future.isDone()) {
+                // Timed out while waiting for a permit
+                return;
+            }
+            result = operation.call();
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return;
+        } finally {
+            // Release before completing since dependent actions run
+            // synchronously and may submit operations of their own
+            permits.release();
+        }
+        future.complete(result);
+    }
+
+    /**
+     * Runs an operation on the executor and waits for its result. Used where
+     * the caller's API is synchronous, to still apply the concurrency limit.
+     * The caller waits at most the call timeout, which is shorter than the
+     * timeout of the operation since the caller may be a UI thread.
+     *
+     * @throws TimeoutException
+     *             if the operation doesn't complete within the call timeout
+     */
+    public <T> T call(Callable<T> operation) throws Exception {
+        try {
+            return submit(operation).get(settings.getCallTimeout().toMillis(),
+                    TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
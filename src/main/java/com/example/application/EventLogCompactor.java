@@ -0,0 +1,77 @@
+package com.example.application;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes old events in bounded batches on a background thread so that
+ * truncation never holds long-running locks on the event table.
+ */
+public class EventLogCompactor implements AutoCloseable {
+    private static final Logger logger = LoggerFactory
+            .getLogger(EventLogCompactor.class);
+
+    private final ExecutorService executor = Executors
+            .newSingleThreadExecutor(
+                    Thread.ofVirtual().name("event-log-compactor").factory());
+
+    private final EventLogStorage eventLogs;
+    private final EventTailCache tailCache;
+    private final PgBackendProperties.Compaction settings;
+
+    public EventLogCompactor(EventLogStorage eventLogs,
+            EventTailCache tailCache,
+            PgBackendProperties.Compaction settings) {
+        this.eventLogs = eventLogs;
+        this.tailCache = tailCache;
+        this.settings = settings;
+    }
+
+    /**
+     * Schedules deletion of all events in the log that are older than the
+     * given event. All events are deleted if <code>olderThan</code> is
+     * <code>null</code>. Nothing is deleted if the event isn't found, which is
+     * logged as an error since the caller passed a boundary that doesn't
+     * belong to the log.
+     */
+    public void truncate(String logId, UUID olderThan) {
+        executor.execute(() -> {
+            if (olderThan == null) {
+                deleteOlderThan(logId, Long.MAX_VALUE);
+                return;
+            }
+
+            tailCache.findSequenceId(logId, olderThan)
+                    .or(() -> eventLogs.getSequenceIdByEventId(logId,
+                            olderThan))
+                    .ifPresentOrElse(
+                            id -> deleteOlderThan(logId, id.longValue()),
+                            () -> logger.error(
+                                    "Not truncating event log {} since the event {} isn't in it",
+                                    logId, olderThan));
+        });
+    }
+
+    private void deleteOlderThan(String logId, long id) {
+        int batchSize = settings.getBatchSize();
+        try {
+            eventLogs.recordTruncation(logId, id);
+            int deleted;
+            do {
+                deleted = eventLogs.deleteOlderThan(logId, id, batchSize);
+            } while (deleted == batchSize);
+            tailCache.truncate(logId, id);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to truncate event log " + logId, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
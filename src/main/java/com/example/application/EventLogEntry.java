@@ -1,17 +1,58 @@
 package com.example.application;
 
+import java.io.Serializable;
+import java.util.Objects;
 import java.util.UUID;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.Transient;
 
+/**
+ * An event in the event table, which is created by {@link EventLogTable}
+ * together with its indexes and id sequence. Events are written with plain
+ * SQL, never through JPA.
+ */
 @Entity
+@IdClass(EventLogEntry.Key.class)
 public class EventLogEntry {
+    /**
+     * The identifier of an event, since its sequence id is only unique
+     * together with the log id in the per-log sequence mode.
+     */
+    public static class Key implements Serializable {
+        private String logId;
+        private long id;
+
+        public Key() {
+            // Hibernate constructor
+        }
+
+        public Key(String logId, long id) {
+            this.logId = logId;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other && id == other.id
+                    && Objects.equals(logId, other.logId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(logId, Long.valueOf(id));
+        }
+    }
+
+    /**
+     * Sequence id from the sequence shared by all logs, or the position of
+     * the event within its log with the per-log sequence mode.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private long id;
 
     private UUID eventId;
@@ -19,6 +60,13 @@ public class EventLogEntry {
     @Column(columnDefinition = "text")
     private String payload;
 
+    @Column(columnDefinition = "bytea")
+    private byte[] payloadData;
+
+    @Transient
+    private String decodedPayload;
+
+    @Id
     private String logId;
 
     public EventLogEntry() {
@@ -31,6 +79,12 @@ public class EventLogEntry {
         this.payload = payload;
     }
 
+    public EventLogEntry(long id, UUID eventId, String logId,
+            String payload) {
+        this(eventId, logId, payload);
+        this.id = id;
+    }
+
     public long getId() {
         return id;
     }
@@ -40,7 +94,13 @@ public class EventLogEntry {
     }
 
     public String getPayload() {
-        return payload;
+        return payload != null ? payload : decodedPayload;
+    }
+
+    @PostLoad
+    private void decodePayload() {
+        // Decode once rather than for each subscriber that gets the event
+        decodedPayload = PayloadCodec.decode(payload, payloadData);
     }
 
     public String getLogId() {
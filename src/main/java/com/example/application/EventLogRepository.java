@@ -1,30 +1,62 @@
 package com.example.application;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import jakarta.transaction.Transactional;
+
 @Repository
-public interface EventLogRepository extends JpaRepository<EventLogEntry, Long> {
+public interface EventLogRepository
+        extends JpaRepository<EventLogEntry, EventLogEntry.Key> {
+
+    /**
+     * The columns of an event, read without going through the persistence
+     * context.
+     */
+    interface EventRow {
+        long getId();
+
+        UUID getEventId();
 
-    @Query(value = "SELECT pg_notify(?, '')", nativeQuery = true)
-    void notify(String channel);
+        String getLogId();
 
-    default void submitEvent(UUID trackingId, String logId,
-            String eventPayload) {
-        EventLogEntry eventLogEntry = new EventLogEntry(trackingId, logId,
-                eventPayload);
-        save(eventLogEntry);
+        String getPayload();
 
-        notify(logId);
+        byte[] getPayloadData();
     }
 
-    @Query("select id from EventLogEntry where eventId = :eventId")
-    long getSequenceIdByEventId(UUID eventId);
+    @Query(value = "SELECT pg_notify(?, ?)", nativeQuery = true)
+    void notify(String channel, String payload);
+
+    @Query("select id from EventLogEntry where logId = :logId and eventId = :eventId")
+    Optional<Long> getSequenceIdByEventId(String logId, UUID eventId);
+
+    @Query(value = "select * from event_log_entry where log_id = :logId and id > :sequenceId order by id limit :limit", nativeQuery = true)
+    List<EventLogEntry> findPageNewerThan(long sequenceId, String logId,
+            int limit);
+
+    @Query(value = "select * from event_log_entry where log_id = :logId and id between :fromId and :toId order by id", nativeQuery = true)
+    List<EventLogEntry> findRange(String logId, long fromId, long toId);
+
+    @Query("select count(*) from EventLogEntry where logId = :logId and id between :fromId and :toId")
+    long countRange(String logId, long fromId, long toId);
+
+    @Query(value = "select e.id as \"id\", e.event_id as \"eventId\", e.log_id as \"logId\", e.payload as \"payload\", e.payload_data as \"payloadData\" from unnest(cast(:logIds as text[])) as l(log_id) cross join lateral (select * from event_log_entry where log_id = l.log_id order by id desc limit :limit) e order by e.log_id, e.id", nativeQuery = true)
+    List<EventRow> findLatestOfLogs(String[] logIds, int limit);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from event_log_entry where log_id = :logId and id in (select id from event_log_entry where log_id = :logId and id < :sequenceId order by id limit :batchSize)", nativeQuery = true)
+    int deleteOlderThan(String logId, long sequenceId, int batchSize);
 
-    @Query("from EventLogEntry where id > :sequenceId and logId = :logId")
-    List<EventLogEntry> findAllNewerThan(long sequenceId, String logId);
+    @Transactional
+    @Modifying
+    @Query(value = "insert into event_log_truncation as t (log_id, older_than) values (:logId, :olderThan) on conflict (log_id) do update set older_than = greatest(t.older_than, excluded.older_than)", nativeQuery = true)
+    int recordTruncation(String logId, long olderThan);
 }
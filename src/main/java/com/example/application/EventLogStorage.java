@@ -0,0 +1,74 @@
+package com.example.application;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Read, delete and notify operations on the event table used by the backend.
+ * The implementation is selected with the <code>pg-backend.storage</code>
+ * property. Events are written by {@link EventSubmitter} with either.
+ */
+public interface EventLogStorage {
+
+    void notify(String channel, String payload);
+
+    /**
+     * Finds the sequence id of an event. Scoped to the log so that only the
+     * partition of that log is searched if the table is partitioned.
+     */
+    Optional<Long> getSequenceIdByEventId(String logId, UUID eventId);
+
+    List<EventLogEntry> findPageNewerThan(long sequenceId, String logId,
+            int limit);
+
+    /**
+     * Finds the events of a log with sequence ids in the given range, both
+     * inclusive.
+     */
+    List<EventLogEntry> findRange(String logId, long fromId, long toId);
+
+    /**
+     * Counts the events of a log with sequence ids in the given range, both
+     * inclusive.
+     */
+    long countRange(String logId, long fromId, long toId);
+
+    /**
+     * Finds the latest events of each of the given logs in a single query,
+     * ordered by log id and sequence id.
+     *
+     * @param limit
+     *            the maximum number of events to return for each log
+     */
+    List<EventLogEntry> findLatestOfLogs(Collection<String> logIds,
+            int limit);
+
+    int deleteOlderThan(String logId, long sequenceId, int batchSize);
+
+    /**
+     * Records that all events of a log with a sequence id less than the given
+     * one are being deleted, so that time partitions with only such events
+     * can be dropped. The recorded boundary never moves backwards.
+     */
+    void recordTruncation(String logId, long olderThan);
+
+    /**
+     * Passes all events newer than the given sequence id to the consumer in
+     * pages of at most <code>pageSize</code> events, so that memory use stays
+     * bounded regardless of how many events there are.
+     */
+    default void streamNewerThan(long sequenceId, String logId, int pageSize,
+            Consumer<List<EventLogEntry>> pageConsumer) {
+        List<EventLogEntry> page;
+        do {
+            page = findPageNewerThan(sequenceId, logId, pageSize);
+            if (!page.isEmpty()) {
+                pageConsumer.accept(page);
+                sequenceId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize);
+    }
+}
@@ -0,0 +1,517 @@
+package com.example.application;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.mapping.Table;
+import org.hibernate.tool.schema.spi.SchemaFilter;
+import org.hibernate.tool.schema.spi.SchemaFilterProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.application.PgBackendProperties.SequenceMode;
+
+/**
+ * Creates the event table, since Hibernate can neither create the partitioned
+ * and per-log layouts nor keep a unique index on the event id without
+ * rebuilding it on every schema update.
+ * <p>
+ * With partitioning, the table is hashed on the log id so that inserts and
+ * catch-up queries for a log only touch one partition and vacuuming a busy
+ * log doesn't affect the others. Each hash partition can also be
+ * sub-partitioned by the time when events were written, in which case
+ * partitions for upcoming intervals are created in advance and partitions
+ * older than the retention are detached and dropped rather than deleting
+ * their events row by row. A partition is kept past the retention for as long
+ * as it has events of some log that the log hasn't been truncated past, since
+ * subscribers may still need those events to catch up. The truncation
+ * boundary of each log is kept in <code>event_log_truncation</code>.
+ * <p>
+ * Time sub-partitions only make dropping old events cheaper. Catch-up reads
+ * and event id lookups know a sequence id or an event id but not when the
+ * event was written, and sequence ids are not ordered by write time across
+ * transactions, so these queries probe every time partition of the log's
+ * hash partition. The retention should therefore keep the number of time
+ * partitions small.
+ * <p>
+ * With per-log sequence numbers, the id of an event is its position within
+ * its log, so ids are only unique together with the log id. The latest
+ * position of each log is kept in <code>event_log_position</code>.
+ * <p>
+ * Event ids are unique. A unique index on a partitioned table must include
+ * the partition keys, so the event id index of a partitioned table is a plain
+ * one and {@link EventSubmitter} checks for existing ids instead.
+ * <p>
+ * The table and the global id sequence are created before Hibernate updates
+ * the schema. A table that was created by Hibernate gets any missing columns
+ * and indexes, and the partitions of an existing table are managed, but an
+ * existing table is never converted to another layout. Startup fails if some
+ * event id of an existing table occurs more than once, since the event id
+ * index can't be made unique until the duplicates have been removed.
+ */
+@Component
+public class EventLogTable implements AutoCloseable {
+    /**
+     * Makes the JPA entity manager factory, and thus Hibernate's schema
+     * update, wait until the event table has been created.
+     */
+    @Component
+    public static class EntityManagerFactoryDependency
+            extends EntityManagerFactoryDependsOnPostProcessor {
+        public EntityManagerFactoryDependency() {
+            super(EventLogTable.class);
+        }
+    }
+
+    /**
+     * Keeps Hibernate's schema management away from the event table. Among
+     * other things, Hibernate doesn't see indexes on a partitioned table
+     * through the JDBC metadata and would otherwise try to create them again
+     * on every start.
+     */
+    @Component
+    public static class HibernateSchemaFilter implements
+            HibernatePropertiesCustomizer, SchemaFilterProvider, SchemaFilter {
+        @Override
+        public void customize(Map<String, Object> hibernateProperties) {
+            hibernateProperties.put(AvailableSettings.HBM2DDL_FILTER_PROVIDER,
+                    this);
+        }
+
+        @Override
+        public boolean includeNamespace(Namespace namespace) {
+            return true;
+        }
+
+        @Override
+        public boolean includeTable(Table table) {
+            return !TABLE.equalsIgnoreCase(table.getName());
+        }
+
+        @Override
+        public boolean includeSequence(Sequence sequence) {
+            return true;
+        }
+
+        @Override
+        public SchemaFilter getCreateFilter() {
+            return this;
+        }
+
+        @Override
+        public SchemaFilter getDropFilter() {
+            return this;
+        }
+
+        @Override
+        public SchemaFilter getTruncatorFilter() {
+            return this;
+        }
+
+        @Override
+        public SchemaFilter getMigrateFilter() {
+            return this;
+        }
+
+        @Override
+        public SchemaFilter getValidateFilter() {
+            return this;
+        }
+    }
+
+    private static final String TABLE = "event_log_entry";
+
+    private static final String POSITION_TABLE = "event_log_position";
+
+    private static final String SEQUENCE = "event_log_entry_seq";
+
+    private static final String TRUNCATION_TABLE = "event_log_truncation";
+
+    private static final String EVENT_ID_INDEX = "event_log_entry_event_id_idx";
+
+    private static final String NEW_EVENT_ID_INDEX = "event_log_entry_event_id_new_idx";
+
+    private static final String LOG_ID_INDEX = "event_log_entry_log_id_id_idx";
+
+    // Number of upcoming time partitions to keep created in advance
+    private static final int PRECREATED_INTERVALS = 2;
+
+    private static final Duration MAINTENANCE_INTERVAL = Duration.ofHours(1);
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter
+            .ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(EventLogTable.class);
+
+    private final JdbcTemplate jdbc;
+    private final PgBackendProperties.Partitioning settings;
+    private final boolean perLog;
+    private final boolean partitioned;
+
+    private final CountDownLatch closing = new CountDownLatch(1);
+
+    private final Thread maintenanceThread;
+
+    public EventLogTable(DataSource dataSource,
+            PgBackendProperties properties) {
+        jdbc = new JdbcTemplate(dataSource);
+        settings = properties.getPartitioning();
+        perLog = properties.getSequenceMode() == SequenceMode.PER_LOG;
+
+        partitioned = prepareTable(properties);
+        if (!perLog) {
+            jdbc.execute("create sequence if not exists " + SEQUENCE
+                    + " start with 1 increment by 1");
+            ensureSequenceIncrement();
+        }
+        jdbc.execute("create table if not exists " + TRUNCATION_TABLE
+                + " (log_id varchar(255) primary key, older_than bigint not null)");
+        if (partitioned && isTimePartitioned()) {
+            if (!settings.getRetention().isPositive()) {
+                logger.warn(
+                        "Time partitions of {} are never dropped without a retention, so they only slow down reads",
+                        TABLE);
+            }
+            maintain();
+            maintenanceThread = Thread.ofVirtual()
+                    .name("event-log-partitioning").start(this::run);
+        } else {
+            maintenanceThread = null;
+        }
+    }
+
+    /**
+     * Checks whether the event table is partitioned, in which case its event
+     * id index can't be unique.
+     */
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    private boolean isTimePartitioned() {
+        return settings.getTimeInterval().isPositive();
+    }
+
+    /**
+     * Creates the table unless it already exists and checks that an existing
+     * table uses the configured sequence mode, since mixing global ids and
+     * per-log positions in the same log would break ordering.
+     *
+     * @return <code>true</code> if the table is partitioned
+     */
+    private boolean prepareTable(PgBackendProperties properties) {
+        List<String> kind = jdbc.queryForList(
+                "select relkind::text from pg_class where oid = to_regclass(?)",
+                String.class, TABLE);
+        if (kind.isEmpty()) {
+            createTable();
+            return settings.isEnabled();
+        }
+
+        boolean hasPositions = jdbc.queryForObject(
+                "select to_regclass(?) is not null", Boolean.class,
+                POSITION_TABLE).booleanValue();
+        if (hasPositions != perLog) {
+            throw new IllegalStateException("The table " + TABLE
+                    + " uses " + (hasPositions ? "per-log" : "global")
+                    + " sequence ids, which can't be changed to "
+                    + properties.getSequenceMode());
+        }
+
+        boolean partitioned = kind.get(0).equals("p");
+        if (settings.isEnabled() && !partitioned) {
+            logger.warn(
+                    "The table {} already exists without partitioning, it must be migrated manually",
+                    TABLE);
+        }
+        addMissingColumns();
+        if (!partitioned) {
+            ensureCatchUpIndex();
+            ensureUniqueEventIds();
+        }
+        return partitioned;
+    }
+
+    /**
+     * Makes a sequence that was created by Hibernate with an increment of 50
+     * count by one. Every event takes its id with a separate
+     * <code>nextval</code>, so a larger increment would leave unused ids
+     * between every pair of consecutive events.
+     */
+    private void ensureSequenceIncrement() {
+        long increment = jdbc.queryForObject(
+                "select seqincrement from pg_sequence where seqrelid = to_regclass(?)",
+                Long.class, SEQUENCE).longValue();
+        if (increment != 1) {
+            logger.info("Changing the increment of {} from {} to 1", SEQUENCE,
+                    Long.valueOf(increment));
+            jdbc.execute("alter sequence " + SEQUENCE + " increment by 1");
+        }
+    }
+
+    /**
+     * Adds the columns that have been added to EventLogEntry since an
+     * existing table was created by Hibernate.
+     */
+    private void addMissingColumns() {
+        boolean hasPayloadData = jdbc.queryForObject(
+                "select exists (select 1 from pg_attribute where attrelid = to_regclass(?) and attname = 'payload_data' and not attisdropped)",
+                Boolean.class, TABLE).booleanValue();
+        if (!hasPayloadData) {
+            logger.info("Adding the payload_data column to {}", TABLE);
+            jdbc.execute("alter table " + TABLE
+                    + " add column if not exists payload_data bytea");
+        }
+    }
+
+    /**
+     * Indexes the log id and sequence id of a table that was created by
+     * Hibernate with only the sequence id as its primary key, since catch-up
+     * reads, counts and deletes all look up ranges of a log.
+     */
+    private void ensureCatchUpIndex() {
+        boolean indexed = jdbc.queryForObject("""
+                select exists (select 1 from pg_index i
+                    where i.indrelid = to_regclass(?) and i.indisvalid
+                    and i.indkey[0] = (select attnum from pg_attribute where attrelid = i.indrelid and attname = 'log_id')
+                    and i.indkey[1] = (select attnum from pg_attribute where attrelid = i.indrelid and attname = 'id'))""",
+                Boolean.class, TABLE).booleanValue();
+        if (!indexed) {
+            logger.info("Creating an index on the log ids and ids of {}",
+                    TABLE);
+            // Drops any invalid leftover of an interrupted build
+            jdbc.execute("drop index concurrently if exists " + LOG_ID_INDEX);
+            jdbc.execute("create index concurrently " + LOG_ID_INDEX + " on "
+                    + TABLE + " (log_id, id)");
+        }
+    }
+
+    /**
+     * Makes the event id index of a table that was created by Hibernate
+     * unique if it isn't already. The unique index is built without blocking
+     * writes under another name and then swapped in.
+     *
+     * @throws IllegalStateException
+     *             if some event id occurs more than once
+     */
+    private void ensureUniqueEventIds() {
+        List<Map<String, Object>> index = jdbc.queryForList(
+                "select indisunique as is_unique, indisvalid as is_valid from pg_index where indexrelid = to_regclass(?)",
+                EVENT_ID_INDEX);
+        boolean valid = !index.isEmpty()
+                && Boolean.TRUE.equals(index.get(0).get("is_valid"));
+        if (valid && Boolean.TRUE.equals(index.get(0).get("is_unique"))) {
+            return;
+        }
+
+        long duplicates = jdbc.queryForObject(
+                "select count(*) from (select 1 from " + TABLE
+                        + " group by event_id having count(*) > 1) d",
+                Long.class).longValue();
+        if (duplicates > 0) {
+            throw duplicateEventIds(duplicates + " event ids occur", null);
+        }
+
+        logger.info("Creating a unique index on the event ids of {}", TABLE);
+        jdbc.execute("drop index concurrently if exists " + NEW_EVENT_ID_INDEX);
+        try {
+            jdbc.execute("create unique index concurrently "
+                    + NEW_EVENT_ID_INDEX + " on " + TABLE + " (event_id)");
+        } catch (DataAccessException e) {
+            jdbc.execute(
+                    "drop index concurrently if exists " + NEW_EVENT_ID_INDEX);
+            // A duplicate was written after checking
+            throw duplicateEventIds("some event id occurs", e);
+        }
+        jdbc.execute("drop index concurrently if exists " + EVENT_ID_INDEX);
+        jdbc.execute("alter index " + NEW_EVENT_ID_INDEX + " rename to "
+                + EVENT_ID_INDEX);
+    }
+
+    private static IllegalStateException duplicateEventIds(String count,
+            Throwable cause) {
+        return new IllegalStateException("Can't create a unique index on the"
+                + " event ids of " + TABLE + " since " + count
+                + " more than once. Remove the duplicates before starting"
+                + " again.", cause);
+    }
+
+    private void createTable() {
+        boolean partitioned = settings.isEnabled();
+        boolean byTime = partitioned && isTimePartitioned();
+        int count = settings.getHashPartitions();
+        if (partitioned) {
+            logger.info("Creating {} with {} hash partitions{}{}", TABLE,
+                    Integer.valueOf(count),
+                    byTime ? " sub-partitioned by time" : "",
+                    perLog ? " and per-log sequence ids" : "");
+        } else {
+            logger.info("Creating {} with {} sequence ids", TABLE,
+                    perLog ? "per-log" : "global");
+        }
+
+        // Column types match what Hibernate would create for EventLogEntry.
+        // The primary key also serves catch-up queries, and on a partitioned
+        // table it must include the partition keys.
+        List<String> statements = new ArrayList<>();
+        statements.add("create table " + TABLE + " (" //
+                + "id bigint not null, " //
+                + "event_id uuid, " //
+                + "log_id varchar(255) not null, " //
+                + "payload text, " //
+                + "payload_data bytea, " //
+                + (partitioned
+                        ? "created_at timestamp with time zone not null default now(), "
+                        : "")
+                + "primary key (log_id, id" + (byTime ? ", created_at" : "")
+                + "))" + (partitioned ? " partition by hash (log_id)" : ""));
+        for (int i = 0; partitioned && i < count; i++) {
+            statements.add("create table " + TABLE + "_p" + i
+                    + " partition of " + TABLE + " for values with (modulus "
+                    + count + ", remainder " + i + ")"
+                    + (byTime ? " partition by range (created_at)" : ""));
+        }
+        statements.add("create " + (partitioned ? "" : "unique ") + "index "
+                + EVENT_ID_INDEX + " on " + TABLE + " (event_id)");
+        if (perLog) {
+            statements.add("create table " + POSITION_TABLE
+                    + " (log_id varchar(255) primary key, position bigint not null)");
+        }
+        // Runs as a single implicit transaction
+        jdbc.execute(String.join(";\n", statements));
+    }
+
+    private void run() {
+        long interval = Math.min(
+                MAINTENANCE_INTERVAL.toMillis(),
+                settings.getTimeInterval().toMillis() / 2);
+        try {
+            while (!closing.await(Math.max(interval, 1000),
+                    TimeUnit.MILLISECONDS)) {
+                try {
+                    maintain();
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to maintain event log partitions", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closing
+        }
+    }
+
+    /**
+     * Creates the time partitions for the current and upcoming intervals of
+     * each hash partition and drops the partitions that have passed the
+     * retention, based on the database clock.
+     */
+    private void maintain() {
+        long intervalMillis = settings.getTimeInterval().toMillis();
+        long nowMillis = jdbc.queryForObject(
+                "select (extract(epoch from now()) * 1000)::bigint",
+                Long.class).longValue();
+        Instant now = Instant.ofEpochMilli(nowMillis);
+        long current = Math.floorDiv(nowMillis, intervalMillis)
+                * intervalMillis;
+
+        for (String hashPartition : findPartitions(TABLE)) {
+            for (int i = 0; i <= PRECREATED_INTERVALS; i++) {
+                Instant start = Instant
+                        .ofEpochMilli(current + i * intervalMillis);
+                Instant end = start.plusMillis(intervalMillis);
+                jdbc.execute("create table if not exists " + hashPartition
+                        + "_t" + SUFFIX.format(start) + " partition of "
+                        + hashPartition + " for values from ('" + start
+                        + "') to ('" + end + "')");
+            }
+
+            Duration retention = settings.getRetention();
+            if (retention.isPositive()) {
+                dropOlderThan(hashPartition, now.minus(retention));
+            }
+        }
+    }
+
+    private void dropOlderThan(String hashPartition, Instant cutoff) {
+        String prefix = hashPartition + "_t";
+        for (String partition : findPartitions(hashPartition)) {
+            if (!partition.startsWith(prefix)) {
+                continue;
+            }
+            Instant end;
+            try {
+                end = Instant.from(SUFFIX.parse(
+                        partition.substring(prefix.length())))
+                        .plus(settings.getTimeInterval());
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (!end.isAfter(cutoff)) {
+                int untruncated = countUntruncatedLogs(partition);
+                if (untruncated > 0) {
+                    logger.warn(
+                            "Keeping event log partition {} past the retention since {} logs have events in it that haven't been truncated",
+                            partition, Integer.valueOf(untruncated));
+                    continue;
+                }
+                logger.info("Dropping event log partition {}", partition);
+                // Doesn't block queries on the parent table while detaching
+                jdbc.execute("alter table " + hashPartition
+                        + " detach partition " + partition + " concurrently");
+                jdbc.execute("drop table " + partition);
+            }
+        }
+    }
+
+    /**
+     * Counts the logs with events in a partition that haven't all been
+     * truncated, including logs that have never been truncated. Events are no
+     * longer written to a partition that has passed the retention and
+     * truncation boundaries only move forward, so a partition without such
+     * logs can't get any later.
+     */
+    private int countUntruncatedLogs(String partition) {
+        Integer count = jdbc.queryForObject("select count(*) from"
+                + " (select log_id, max(id) as max_id from " + partition
+                + " group by log_id) p left join " + TRUNCATION_TABLE
+                + " t on t.log_id = p.log_id"
+                + " where t.older_than is null or t.older_than <= p.max_id",
+                Integer.class);
+        return count.intValue();
+    }
+
+    private List<String> findPartitions(String parent) {
+        return jdbc.queryForList(
+                "select inhrelid::regclass::text from pg_inherits where inhparent = to_regclass(?) order by 1",
+                String.class, parent);
+    }
+
+    @Override
+    public void close() {
+        closing.countDown();
+        if (maintenanceThread != null) {
+            try {
+                maintenanceThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.application;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The payload of a NOTIFY sent for one or more events submitted to the same
+ * log. Carries the lowest and highest sequence id among the events and, if
+ * they fit within the PostgreSQL payload limit, also the events themselves.
+ * May also carry the timing of the batch that the events were written in so
+ * that receivers can trace the delivery latency.
+ */
+public record EventNotification(long firstId, long id,
+        List<EventLogEntry> events, Timing timing) {
+    /**
+     * Wall clock times in epoch milliseconds of when the oldest event in a
+     * batch was submitted and when the batch was written. Both are taken on
+     * the submitting node.
+     */
+    public record Timing(long submitted, long written) {
+        /**
+         * Upper bound for the encoded length, which has a prefix, two longs
+         * and two separators.
+         */
+        static final int MAX_ENCODED_BYTES = 1 + 20 + 1 + 20 + 1;
+    }
+
+    /**
+     * PostgreSQL rejects payloads of 8000 bytes or more.
+     */
+    static final int MAX_PAYLOAD_BYTES = 7999;
+
+    private static final char SEPARATOR = ':';
+
+    private static final char RANGE_SEPARATOR = '-';
+
+    private static final char TIMING_PREFIX = '@';
+    private static final char TIMING_SEPARATOR = ',';
+    private static final char TIMING_END = ';';
+
+    /**
+     * Creates a notification for the given events, which must be sorted by
+     * sequence id.
+     *
+     * @param reservedBytes
+     *            the number of payload bytes needed for other purposes than
+     *            the notification itself
+     * @param timing
+     *            the timing to include, or <code>null</code> to not include
+     *            any
+     */
+    public static EventNotification of(List<EventLogEntry> entries,
+            boolean inlinePayload, int reservedBytes, Timing timing) {
+        long firstId = entries.get(0).getId();
+        long id = entries.get(entries.size() - 1).getId();
+        if (timing != null) {
+            reservedBytes += Timing.MAX_ENCODED_BYTES;
+        }
+        if (inlinePayload
+                && fitsInline(entries, MAX_PAYLOAD_BYTES - reservedBytes)) {
+            return new EventNotification(firstId, id, List.copyOf(entries),
+                    timing);
+        }
+        return new EventNotification(firstId, id, List.of(), timing);
+    }
+
+    /**
+     * Parses a notification payload.
+     *
+     * @return the parsed notification, or <code>null</code> if the payload
+     *         doesn't carry any event information
+     */
+    public static EventNotification parse(String logId,
+            String notificationPayload) {
+        if (notificationPayload == null || notificationPayload.isEmpty()) {
+            return null;
+        }
+
+        try {
+            Timing timing = null;
+            int start = 0;
+            if (notificationPayload.charAt(0) == TIMING_PREFIX) {
+                int separator = notificationPayload.indexOf(TIMING_SEPARATOR);
+                start = notificationPayload.indexOf(TIMING_END) + 1;
+                timing = new Timing(
+                        Long.parseLong(
+                                notificationPayload.substring(1, separator)),
+                        Long.parseLong(notificationPayload
+                                .substring(separator + 1, start - 1)));
+            }
+
+            if (notificationPayload.indexOf(SEPARATOR, start) == -1) {
+                int range = notificationPayload.indexOf(RANGE_SEPARATOR,
+                        start);
+                long id = Long.parseLong(notificationPayload
+                        .substring(range == -1 ? start : range + 1));
+                long firstId = range == -1 ? id
+                        : Long.parseLong(
+                                notificationPayload.substring(start, range));
+                return new EventNotification(firstId, id, List.of(), timing);
+            }
+
+            List<EventLogEntry> events = new ArrayList<>();
+            int position = start;
+            while (position < notificationPayload.length()) {
+                int idEnd = notificationPayload.indexOf(SEPARATOR, position);
+                int eventIdEnd = notificationPayload.indexOf(SEPARATOR,
+                        idEnd + 1);
+                int lengthEnd = notificationPayload.indexOf(SEPARATOR,
+                        eventIdEnd + 1);
+                int payloadEnd = lengthEnd + 1 + Integer.parseInt(
+                        notificationPayload.substring(eventIdEnd + 1,
+                                lengthEnd));
+
+                events.add(new EventLogEntry(
+                        Long.parseLong(notificationPayload.substring(position,
+                                idEnd)),
+                        UUID.fromString(notificationPayload
+                                .substring(idEnd + 1, eventIdEnd)),
+                        logId, notificationPayload.substring(lengthEnd + 1,
+                                payloadEnd)));
+                position = payloadEnd;
+            }
+            return new EventNotification(events.get(0).getId(),
+                    events.get(events.size() - 1).getId(), events, timing);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    public boolean isInline() {
+        return !events.isEmpty();
+    }
+
+    public String encode() {
+        StringBuilder builder = new StringBuilder();
+        if (timing != null) {
+            builder.append(TIMING_PREFIX).append(timing.submitted())
+                    .append(TIMING_SEPARATOR).append(timing.written())
+                    .append(TIMING_END);
+        }
+        if (!isInline()) {
+            if (firstId != id) {
+                builder.append(firstId).append(RANGE_SEPARATOR);
+            }
+            return builder.append(id).toString();
+        }
+
+        for (EventLogEntry event : events) {
+            builder.append(event.getId()).append(SEPARATOR)
+                    .append(event.getEventId()).append(SEPARATOR)
+                    .append(event.getPayload().length()).append(SEPARATOR)
+                    .append(event.getPayload());
+        }
+        return builder.toString();
+    }
+
+    private static boolean fitsInline(List<EventLogEntry> entries,
+            int maxBytes) {
+        // id, UUID, length and separators take less than 70 bytes
+        int overhead = 70 * entries.size();
+        long maxLength = overhead;
+        for (EventLogEntry entry : entries) {
+            maxLength += entry.getPayload().length() * 3L;
+        }
+        if (maxLength <= maxBytes) {
+            // Fast path for payloads that fit even if every char is 3 bytes
+            return true;
+        }
+
+        long length = overhead;
+        for (EventLogEntry entry : entries) {
+            length += entry.getPayload()
+                    .getBytes(StandardCharsets.UTF_8).length;
+            if (length > maxBytes) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,474 @@
+package com.example.application;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects events submitted concurrently during a short window and writes
+ * them in a single transaction: one multi-row insert for all events and one
+ * NOTIFY per affected log. The notifications are delivered when the
+ * transaction commits.
+ * <p>
+ * A batch that fails with a transient error, such as a lost connection or a
+ * serialization failure, is retried a bounded number of times. Other
+ * failures, and a failed commit whose outcome is unknown, complete the
+ * futures of all events in the batch exceptionally.
+ * <p>
+ * An event whose id is already used, either by an earlier event in the same
+ * batch or by an event in the table, only fails its own future. The other
+ * events of the batch are written without it. A partitioned table has no
+ * unique index on the event id, so the ids are then locked and looked up
+ * before inserting instead.
+ */
+public class EventSubmitter implements AutoCloseable {
+    private record PendingEvent(UUID eventId, String logId, String payload,
+            long submittedNanos, CompletableFuture<Void> future) {
+    }
+
+    private static final String INSERT = """
+            insert into event_log_entry (id, event_id, log_id, payload, payload_data)
+            select nextval('event_log_entry_seq'), e, l, p, d
+            from unnest(?::uuid[], ?::text[], ?::text[], ?::bytea[]) with ordinality as t(e, l, p, d, n)
+            order by n
+            returning id, event_id""";
+
+    /**
+     * Assigns each event the next position of its log. Updating the position
+     * row locks it until the transaction commits, so concurrent writers of
+     * the same log commit in position order without leaving gaps.
+     */
+    private static final String INSERT_PER_LOG = """
+            with batch as (
+                select e, l, p, d, n
+                from unnest(?::uuid[], ?::text[], ?::text[], ?::bytea[]) with ordinality as t(e, l, p, d, n)
+            ), counts as (
+                insert into event_log_position as c (log_id, position)
+                select l, count(*) from batch group by l order by l
+                on conflict (log_id) do update set position = c.position + excluded.position
+                returning log_id, position
+            )
+            insert into event_log_entry (id, event_id, log_id, payload, payload_data)
+            select c.position - count(*) over w + row_number() over (w order by b.n), b.e, b.l, b.p, b.d
+            from batch b join counts c on c.log_id = b.l
+            window w as (partition by b.l)
+            order by b.n
+            returning id, event_id""";
+
+    private static final String FIND_EXISTING = "select event_id from event_log_entry where event_id = any(?::uuid[])";
+
+    /**
+     * Serializes writers of the same event ids until the end of the
+     * transaction, locking in a fixed order to avoid deadlocks. Different ids
+     * with the same hash only wait for each other.
+     */
+    private static final String LOCK_EVENT_IDS = "select count(pg_advisory_xact_lock(k)) from (select distinct hashtextextended(e::text, 0) as k from unnest(?::uuid[]) as t(e) order by k) l";
+
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private static final String NOTIFY = "select pg_notify(c, p) from unnest(?::text[], ?::text[]) as t(c, p)";
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(EventSubmitter.class);
+
+    private final BlockingQueue<PendingEvent> queue = new LinkedBlockingQueue<>();
+
+    private final DataSource dataSource;
+    private final PgBackendProperties.Submit settings;
+    private final boolean inlinePayloads;
+    private final String insert;
+    private final boolean checkEventIds;
+    private final LogChannels channels;
+    private final PayloadCodec payloadCodec;
+    private final BackendMetrics metrics;
+    private final EventTracer tracer;
+
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    public EventSubmitter(DataSource dataSource,
+            PgBackendProperties.Submit settings, boolean inlinePayloads,
+            PgBackendProperties.SequenceMode sequenceMode,
+            boolean partitioned, LogChannels channels,
+            PayloadCodec payloadCodec, BackendMetrics metrics,
+            EventTracer tracer) {
+        this.dataSource = dataSource;
+        this.settings = settings;
+        this.inlinePayloads = inlinePayloads;
+        insert = sequenceMode == PgBackendProperties.SequenceMode.PER_LOG
+                ? INSERT_PER_LOG
+                : INSERT;
+        checkEventIds = partitioned;
+        this.channels = channels;
+        this.payloadCodec = payloadCodec;
+        this.metrics = metrics;
+        this.tracer = tracer;
+
+        writerThread = Thread.ofVirtual().name("event-submitter")
+                .start(this::run);
+    }
+
+    /**
+     * Queues an event for submission.
+     *
+     * @return a future that is completed when the batch containing the event
+     *         has been committed
+     */
+    public CompletableFuture<Void> submit(UUID eventId, String logId,
+            String payload) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(
+                    new IllegalStateException("Submitter is closed"));
+        } else {
+            queue.add(new PendingEvent(eventId, logId, payload,
+                    System.nanoTime(), future));
+        }
+        return future;
+    }
+
+    private void run() {
+        List<PendingEvent> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                PendingEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+                queue.drainTo(batch);
+            }
+
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<PendingEvent> batch)
+            throws InterruptedException {
+        int maxBatchSize = settings.getMaxBatchSize();
+        long deadline = System.nanoTime()
+                + settings.getBatchWindow().toNanos();
+
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void write(List<PendingEvent> batch) {
+        List<PendingEvent> pending = rejectRepeated(batch);
+        // The batch is in submit order
+        EventNotification.Timing timing = tracer
+                .startWrite(pending.get(0).submittedNanos());
+        for (int attempt = 0;;) {
+            try {
+                writeOnce(pending, timing);
+                break;
+            } catch (SQLException | RuntimeException e) {
+                if (isUniqueViolation(e)) {
+                    // Write the others without the events that failed it
+                    List<PendingEvent> remaining = rejectExisting(pending);
+                    if (remaining.size() < pending.size()) {
+                        if (remaining.isEmpty()) {
+                            return;
+                        }
+                        pending = remaining;
+                        continue;
+                    }
+                }
+                if (attempt >= settings.getMaxRetries() || !isTransient(e)
+                        || !awaitRetry(attempt)) {
+                    for (PendingEvent event : pending) {
+                        event.future().completeExceptionally(e);
+                    }
+                    return;
+                }
+                attempt++;
+                logger.warn("Retrying a batch of {} events after: {}",
+                        Integer.valueOf(pending.size()), e.toString());
+            }
+        }
+
+        long committed = System.nanoTime();
+        metrics.batchWritten(pending.size());
+        for (PendingEvent event : pending) {
+            metrics.submitted(event.submittedNanos(), committed);
+            event.future().complete(null);
+        }
+    }
+
+    private void writeOnce(List<PendingEvent> batch,
+            EventNotification.Timing timing) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                if (checkEventIds) {
+                    checkEventIds(connection, batch);
+                }
+                List<EventLogEntry> entries = insert(connection, batch);
+                notify(connection, entries, timing);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+                throw e;
+            }
+
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                // The events may have been written, so they must not be
+                // written again by retrying
+                throw new IllegalStateException(
+                        "Outcome of committing the events is unknown", e);
+            }
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Fails all but the first of the events in a batch that have the same
+     * id, since they can't all be written.
+     *
+     * @return the events that can still be written
+     */
+    private static List<PendingEvent> rejectRepeated(
+            List<PendingEvent> batch) {
+        Set<UUID> seen = new HashSet<>();
+        List<PendingEvent> unique = new ArrayList<>(batch.size());
+        for (PendingEvent event : batch) {
+            if (seen.add(event.eventId())) {
+                unique.add(event);
+            } else {
+                event.future().completeExceptionally(
+                        new IllegalArgumentException("Event id "
+                                + event.eventId() + " was submitted twice"));
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Fails the events of a batch whose ids are already in the table.
+     *
+     * @return the events that can still be written, or the whole batch if
+     *         the existing ids can't be looked up
+     */
+    private List<PendingEvent> rejectExisting(List<PendingEvent> batch) {
+        UUID[] eventIds = batch.stream().map(PendingEvent::eventId)
+                .toArray(UUID[]::new);
+        Set<UUID> existing = new HashSet<>();
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection
+                        .prepareStatement(FIND_EXISTING)) {
+            statement.setArray(1, connection.createArrayOf("uuid", eventIds));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    existing.add(resultSet.getObject(1, UUID.class));
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Failed to look up the duplicate event ids", e);
+            return batch;
+        }
+
+        List<PendingEvent> remaining = new ArrayList<>(batch.size());
+        for (PendingEvent event : batch) {
+            if (existing.contains(event.eventId())) {
+                event.future().completeExceptionally(
+                        new IllegalArgumentException("An event with id "
+                                + event.eventId() + " already exists"));
+            } else {
+                remaining.add(event);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Fails like the unique index on a plain table would if some event id of
+     * the batch is already in the table. The ids stay locked until the
+     * transaction ends, and a statement that runs after taking the locks sees
+     * the events of any other writer that held them.
+     */
+    private static void checkEventIds(Connection connection,
+            List<PendingEvent> batch) throws SQLException {
+        Array eventIds = connection.createArrayOf("uuid", batch.stream()
+                .map(PendingEvent::eventId).toArray(UUID[]::new));
+        try (PreparedStatement statement = connection
+                .prepareStatement(LOCK_EVENT_IDS)) {
+            statement.setArray(1, eventIds);
+            statement.execute();
+        }
+        try (PreparedStatement statement = connection
+                .prepareStatement(FIND_EXISTING)) {
+            statement.setArray(1, eventIds);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    throw new SQLException("Event id "
+                            + resultSet.getObject(1, UUID.class)
+                            + " already exists", UNIQUE_VIOLATION);
+                }
+            }
+        }
+    }
+
+    private static boolean isUniqueViolation(Exception e) {
+        return e instanceof SQLException sqlException
+                && UNIQUE_VIOLATION.equals(sqlException.getSQLState());
+    }
+
+    private static boolean isTransient(Exception e) {
+        if (e instanceof SQLTransientException
+                || e instanceof SQLRecoverableException) {
+            return true;
+        }
+        // Connection exceptions and transaction rollbacks such as
+        // serialization failures and deadlocks
+        String state = e instanceof SQLException sqlException
+                ? sqlException.getSQLState()
+                : null;
+        return state != null
+                && (state.startsWith("08") || state.startsWith("40"));
+    }
+
+    /**
+     * Waits before retrying a failed batch, doubling the wait for each
+     * attempt.
+     *
+     * @return <code>false</code> if interrupted while waiting
+     */
+    private boolean awaitRetry(int attempt) {
+        try {
+            Thread.sleep(
+                    settings.getRetryBackoff().multipliedBy(1L << attempt));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+            return false;
+        }
+    }
+
+    private List<EventLogEntry> insert(Connection connection,
+            List<PendingEvent> batch) throws SQLException {
+        int size = batch.size();
+        UUID[] eventIds = new UUID[size];
+        String[] logIds = new String[size];
+        String[] payloads = new String[size];
+        byte[][] payloadData = new byte[size][];
+        Map<UUID, PendingEvent> byEventId = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            PendingEvent event = batch.get(i);
+            PayloadCodec.Stored stored = payloadCodec.store(event.payload());
+            eventIds[i] = event.eventId();
+            logIds[i] = event.logId();
+            payloads[i] = stored.text();
+            payloadData[i] = stored.data();
+            byEventId.put(event.eventId(), event);
+        }
+
+        List<EventLogEntry> entries = new ArrayList<>(size);
+        try (PreparedStatement statement = connection
+                .prepareStatement(insert)) {
+            statement.setArray(1, connection.createArrayOf("uuid", eventIds));
+            statement.setArray(2, connection.createArrayOf("text", logIds));
+            statement.setArray(3, connection.createArrayOf("text", payloads));
+            statement.setArray(4,
+                    connection.createArrayOf("bytea", payloadData));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    PendingEvent event = byEventId
+                            .get(resultSet.getObject(2, UUID.class));
+                    entries.add(new EventLogEntry(resultSet.getLong(1),
+                            event.eventId(), event.logId(), event.payload()));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void notify(Connection connection, List<EventLogEntry> entries,
+            EventNotification.Timing timing) throws SQLException {
+        Map<String, List<EventLogEntry>> byLog = new LinkedHashMap<>();
+        for (EventLogEntry entry : entries) {
+            byLog.computeIfAbsent(entry.getLogId(), x -> new ArrayList<>())
+                    .add(entry);
+        }
+
+        String[] channelNames = new String[byLog.size()];
+        String[] payloads = new String[byLog.size()];
+        int i = 0;
+        for (Map.Entry<String, List<EventLogEntry>> entry : byLog
+                .entrySet()) {
+            String logId = entry.getKey();
+            List<EventLogEntry> logEntries = entry.getValue();
+            logEntries.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+
+            channelNames[i] = channels.channelFor(logId);
+            payloads[i] = channels.encode(logId,
+                    EventNotification.of(logEntries, inlinePayloads,
+                            channels.getOverhead(logId), timing).encode());
+            i++;
+        }
+
+        try (PreparedStatement statement = connection
+                .prepareStatement(NOTIFY)) {
+            statement.setArray(1,
+                    connection.createArrayOf("text", channelNames));
+            statement.setArray(2, connection.createArrayOf("text", payloads));
+            statement.execute();
+        }
+    }
+
+    /**
+     * Stops accepting new events and waits for already queued events to be
+     * written.
+     */
+    @Override
+    public void close() {
+        // Not interrupting since that would close the JDBC socket
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.example.application;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Node-local cache of the most recent events of each log. Entries are
+ * recorded from notifications and catch-up reads and evicted oldest first
+ * when the cache exceeds its entry count or byte limit.
+ * <p>
+ * A log's tail is only used for replaying events while it is <em>live</em>,
+ * i.e. while it is known to contain every event of the log newer than its
+ * coverage start. A tail becomes live, or extends its coverage, when a read
+ * of all newer events has been recorded in full. The log's tail becomes
+ * stale when this node stops listening to it. Mapping event ids to sequence
+ * ids is valid regardless since that mapping never changes.
+ * <p>
+ * Tails can also be preloaded without listening, e.g. when the node starts.
+ * A preloaded tail isn't live, but its events can be used for catching up
+ * once they have been checked against the database.
+ * <p>
+ * The last event seen by each ended subscription is also remembered as a
+ * resume point, so that a subscriber that comes back from that event doesn't
+ * need to look up its sequence id from the database even if the event itself
+ * has been evicted.
+ */
+public class EventTailCache {
+    public record Stats(long entries, long bytes, long hits, long misses) {
+    }
+
+    private record CachedEvent(String logId, long id, UUID eventId,
+            String payload, long bytes) {
+    }
+
+    private record ResumePoint(String logId, long id) {
+    }
+
+    private static class Tail {
+        private final NavigableMap<Long, CachedEvent> events = new TreeMap<>();
+        private long coveredFrom = Long.MAX_VALUE;
+        private boolean live;
+        // The start of a read in progress, or Long.MAX_VALUE if none
+        private long readFrom = Long.MAX_VALUE;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Tail> tails = new HashMap<>();
+    private final Map<UUID, CachedEvent> byEventId = new HashMap<>();
+    private final Queue<CachedEvent> insertionOrder = new ArrayDeque<>();
+    // Access order so that the least recently used point is evicted first
+    private final Map<UUID, ResumePoint> resumePoints = new LinkedHashMap<>(
+            16, 0.75f, true);
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public EventTailCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Starts a read of all events of a log with a sequence id greater than
+     * <code>from</code>. The events of the read are recorded as they arrive,
+     * but the tail only covers the range of the read once the whole read has
+     * been recorded, since a partial read must not be replayed as a complete
+     * one.
+     */
+    public void startRead(String logId, long from) {
+        try {
+            lock.lock();
+            Tail tail = tails.computeIfAbsent(logId, x -> new Tail());
+            if (!tail.live) {
+                clear(tail);
+                tail.coveredFrom = Long.MAX_VALUE;
+            }
+            tail.readFrom = from;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records events of the read that was started for a log. Ignored if the
+     * log's tail has been marked stale since the read was started.
+     */
+    public void recordRead(String logId, List<EventLogEntry> events) {
+        try {
+            lock.lock();
+            Tail tail = tails.get(logId);
+            if (tail == null || tail.readFrom == Long.MAX_VALUE) {
+                return;
+            }
+            for (EventLogEntry event : events) {
+                add(tail, logId, event.getId(), event.getEventId(),
+                        event.getPayload());
+            }
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Completes the read that was started for a log after all its events
+     * have been recorded. This makes the log's tail live, unless it has been
+     * marked stale since the read was started.
+     */
+    public void finishRead(String logId) {
+        try {
+            lock.lock();
+            Tail tail = tails.get(logId);
+            if (tail == null || tail.readFrom == Long.MAX_VALUE) {
+                return;
+            }
+            tail.coveredFrom = tail.live
+                    ? Math.min(tail.coveredFrom, tail.readFrom)
+                    : tail.readFrom;
+            tail.live = true;
+            tail.readFrom = Long.MAX_VALUE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a single event received through a notification. Ignored unless
+     * the log's tail is live.
+     */
+    public void recordEvent(String logId, long id, UUID eventId,
+            String payload) {
+        try {
+            lock.lock();
+            Tail tail = tails.get(logId);
+            if (tail != null && tail.live) {
+                add(tail, logId, id, eventId, payload);
+                evict();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the latest events of a log that were read without listening
+     * to the log, i.e. all events with a sequence id greater than
+     * <code>from</code> at the time of reading. Ignored if the log's tail is
+     * already live.
+     */
+    public void recordPreload(String logId, long from,
+            List<EventLogEntry> events) {
+        try {
+            lock.lock();
+            Tail tail = tails.computeIfAbsent(logId, x -> new Tail());
+            if (tail.live || tail.readFrom != Long.MAX_VALUE) {
+                return;
+            }
+            clear(tail);
+            tail.coveredFrom = from;
+            for (EventLogEntry event : events) {
+                add(tail, logId, event.getId(), event.getEventId(),
+                        event.getPayload());
+            }
+            evict();
+            removeIfUnused(logId, tail);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the tail of a log as stale, e.g. because this node no longer
+     * listens to notifications for it.
+     */
+    public void markStale(String logId) {
+        try {
+            lock.lock();
+            Tail tail = tails.get(logId);
+            if (tail != null) {
+                tail.live = false;
+                tail.coveredFrom = Long.MAX_VALUE;
+                tail.readFrom = Long.MAX_VALUE;
+                removeIfUnused(logId, tail);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remembers the sequence id of the last event delivered to a subscription
+     * that has ended. Bounded by the same entry count as the cached events.
+     */
+    public void recordResumePoint(String logId, UUID eventId, long id) {
+        try {
+            lock.lock();
+            resumePoints.put(eventId, new ResumePoint(logId, id));
+            Iterator<ResumePoint> eldest = resumePoints.values().iterator();
+            while (resumePoints.size() > maxEntries) {
+                eldest.next();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all cached events and resume points of a log with a sequence id
+     * lower than the given id.
+     */
+    public void truncate(String logId, long olderThan) {
+        try {
+            lock.lock();
+            Tail tail = tails.get(logId);
+            if (tail != null) {
+                removeHead(tail, olderThan - 1);
+            }
+            resumePoints.values().removeIf(point -> point.id() < olderThan
+                    && point.logId().equals(logId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds the sequence id of an event of the given log from the cached
+     * events or the resume points.
+     */
+    public Optional<Long> findSequenceId(String logId, UUID eventId) {
+        try {
+            lock.lock();
+            CachedEvent event = byEventId.get(eventId);
+            if (event != null && event.logId().equals(logId)) {
+                hits.incrementAndGet();
+                return Optional.of(Long.valueOf(event.id()));
+            }
+            ResumePoint point = resumePoints.get(eventId);
+            if (point != null && point.logId().equals(logId)) {
+                hits.incrementAndGet();
+                return Optional.of(Long.valueOf(point.id()));
+            }
+            misses.incrementAndGet();
+            return Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds all events of a log with a sequence id greater than
+     * <code>from</code>, if the log's tail is live and covers that range.
+     */
+    public Optional<List<EventLogEntry>> findAllNewerThan(String logId,
+            long from) {
+        try {
+            lock.lock();
+            Tail tail = tails.get(logId);
+            if (tail == null || !tail.live || from < tail.coveredFrom) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            hits.incrementAndGet();
+
+            List<EventLogEntry> result = new ArrayList<>();
+            for (CachedEvent event : tail.events.tailMap(Long.valueOf(from),
+                    false).values()) {
+                result.add(new EventLogEntry(event.id(), event.eventId(),
+                        logId, event.payload()));
+            }
+            return Optional.of(result);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds the preloaded events of a log with a sequence id greater than
+     * <code>from</code>, if the log's tail was preloaded and hasn't been
+     * live since. Events that committed after they were preloaded are
+     * missing, so the result must be checked against the database.
+     */
+    public Optional<List<EventLogEntry>> findPreloaded(String logId,
+            long from) {
+        try {
+            lock.lock();
+            Tail tail = tails.get(logId);
+            // A stale tail covers nothing
+            if (tail == null || tail.live || from < tail.coveredFrom) {
+                return Optional.empty();
+            }
+
+            List<EventLogEntry> result = new ArrayList<>();
+            for (CachedEvent event : tail.events.tailMap(Long.valueOf(from),
+                    false).values()) {
+                result.add(new EventLogEntry(event.id(), event.eventId(),
+                        logId, event.payload()));
+            }
+            return Optional.of(result);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        try {
+            lock.lock();
+            return new Stats(byEventId.size(), bytes, hits.get(),
+                    misses.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(Tail tail, String logId, long id, UUID eventId,
+            String payload) {
+        if (id <= Math.min(tail.coveredFrom, tail.readFrom)
+                || tail.events.containsKey(Long.valueOf(id))) {
+            return;
+        }
+
+        // Rough estimate of retained heap: chars, UUID and object headers
+        CachedEvent event = new CachedEvent(logId, id, eventId, payload,
+                payload.length() * 2L + 96);
+        tail.events.put(Long.valueOf(id), event);
+        byEventId.put(eventId, event);
+        insertionOrder.add(event);
+        bytes += event.bytes();
+    }
+
+    private void evict() {
+        while (byEventId.size() > maxEntries || bytes > maxBytes) {
+            CachedEvent oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+
+            Tail tail = tails.get(oldest.logId());
+            if (tail != null && isCached(oldest)) {
+                // Keep the tail contiguous by also dropping anything older
+                removeHead(tail, oldest.id());
+                tail.coveredFrom = Math.max(tail.coveredFrom, oldest.id());
+                if (tail.readFrom != Long.MAX_VALUE) {
+                    tail.readFrom = Math.max(tail.readFrom, oldest.id());
+                }
+                removeIfUnused(oldest.logId(), tail);
+            }
+        }
+
+        // Drop references to events that were removed in other ways
+        if (insertionOrder.size() > 2 * Math.max(maxEntries, 16)) {
+            insertionOrder.removeIf(event -> !isCached(event));
+        }
+    }
+
+    private boolean isCached(CachedEvent event) {
+        return byEventId.get(event.eventId()) == event;
+    }
+
+    private void removeIfUnused(String logId, Tail tail) {
+        if (!tail.live && tail.readFrom == Long.MAX_VALUE
+                && tail.events.isEmpty()) {
+            tails.remove(logId, tail);
+        }
+    }
+
+    private void removeHead(Tail tail, long upToInclusive) {
+        NavigableMap<Long, CachedEvent> head = tail.events
+                .headMap(Long.valueOf(upToInclusive), true);
+        for (CachedEvent event : head.values()) {
+            byEventId.remove(event.eventId(), event);
+            bytes -= event.bytes();
+        }
+        head.clear();
+    }
+
+    private void clear(Tail tail) {
+        removeHead(tail, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.application;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Traces how long it takes for submitted events to reach subscribers,
+ * possibly on another node. The submitting node stamps each notification
+ * with the time when the oldest event in its batch was submitted and when the
+ * batch was written. The receiving node adds the time when the notification
+ * arrived, when it was dispatched and when the consumer of each subscriber
+ * has been called with the last event of the notification. The intervals
+ * between these are recorded as the <code>pg.backend.event.latency</code>
+ * timer with a <code>stage</code> tag:
+ * <ul>
+ * <li><code>queue</code>: waiting in the submitter for a batch to be
+ * written</li>
+ * <li><code>notify</code>: inserting, committing and delivering the NOTIFY
+ * up to the listener thread</li>
+ * <li><code>dispatch</code>: waiting for a dispatcher thread and the log
+ * lock</li>
+ * <li><code>deliver</code>: any catch-up query, waiting in the delivery queue
+ * of a subscription and calling its consumer</li>
+ * <li><code>total</code>: from submitting to delivering</li>
+ * </ul>
+ * The first three stages are recorded once per notification and the last two
+ * once per subscriber that receives the events of the notification.
+ * The stages that cross nodes are based on the wall clock and are thus only
+ * as accurate as the clock synchronization between the nodes. Tracing costs
+ * a few clock reads and a short header in each notification.
+ */
+public class EventTracer {
+    /**
+     * The timing of a dispatched notification, kept with its last event until
+     * each subscriber has received it.
+     */
+    public record Trace(String logId, long id,
+            EventNotification.Timing timing, long receivedMillis,
+            long receivedNanos, long dispatchedNanos) {
+        private long queueMillis() {
+            return Math.max(0, timing.written() - timing.submitted());
+        }
+
+        private long notifyMillis() {
+            return Math.max(0, receivedMillis - timing.written());
+        }
+
+        private long dispatchNanos() {
+            return dispatchedNanos - receivedNanos;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(EventTracer.class);
+
+    private final boolean enabled;
+    private final double logSampleRate;
+
+    private final Timer queue;
+    private final Timer notify;
+    private final Timer dispatch;
+    private final Timer deliver;
+    private final Timer total;
+
+    public EventTracer(MeterRegistry registry,
+            PgBackendProperties.Tracing settings) {
+        enabled = settings.isEnabled();
+        logSampleRate = settings.getLogSampleRate();
+
+        queue = stage(registry, "queue");
+        notify = stage(registry, "notify");
+        dispatch = stage(registry, "dispatch");
+        deliver = stage(registry, "deliver");
+        total = stage(registry, "total");
+    }
+
+    private static Timer stage(MeterRegistry registry, String stage) {
+        return Timer.builder("pg.backend.event.latency")
+                .description(
+                        "Time for events to pass through each stage from submitting to delivering")
+                .tag("stage", stage).minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+
+    /**
+     * Creates the timing to include in the notifications for a batch that is
+     * about to be written.
+     *
+     * @param oldestSubmittedNanos
+     *            the time when the oldest event in the batch was submitted,
+     *            as <code>System.nanoTime()</code>
+     * @return the timing, or <code>null</code> if tracing is disabled
+     */
+    public EventNotification.Timing startWrite(long oldestSubmittedNanos) {
+        if (!enabled) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long queued = TimeUnit.NANOSECONDS
+                .toMillis(System.nanoTime() - oldestSubmittedNanos);
+        return new EventNotification.Timing(now - queued, now);
+    }
+
+    /**
+     * Records the stages of a notification up to when it was dispatched.
+     *
+     * @param receivedMillis
+     *            the wall clock time when the listener received the
+     *            notification
+     * @param receivedNanos
+     *            the same time as <code>System.nanoTime()</code>
+     * @param dispatchedNanos
+     *            the time when a dispatcher started handling the notification
+     * @return the trace to pass to {@link #delivered(Trace)}, or
+     *         <code>null</code> if the notification isn't traced
+     */
+    public Trace dispatched(String logId, EventNotification notification,
+            long receivedMillis, long receivedNanos, long dispatchedNanos) {
+        EventNotification.Timing timing = notification.timing();
+        if (!enabled || timing == null) {
+            return null;
+        }
+        Trace trace = new Trace(logId, notification.id(), timing,
+                receivedMillis, receivedNanos, dispatchedNanos);
+
+        queue.record(trace.queueMillis(), TimeUnit.MILLISECONDS);
+        notify.record(trace.notifyMillis(), TimeUnit.MILLISECONDS);
+        dispatch.record(trace.dispatchNanos(), TimeUnit.NANOSECONDS);
+        return trace;
+    }
+
+    /**
+     * Records the remaining stages of a notification once the consumer of a
+     * subscriber has been called with its last event.
+     */
+    public void delivered(Trace trace) {
+        long deliveredNanos = System.nanoTime();
+        long deliverNanos = deliveredNanos - trace.dispatchedNanos();
+        long totalMillis = Math.max(0, trace.receivedMillis()
+                + TimeUnit.NANOSECONDS
+                        .toMillis(deliveredNanos - trace.receivedNanos())
+                - trace.timing().submitted());
+
+        deliver.record(deliverNanos, TimeUnit.NANOSECONDS);
+        total.record(totalMillis, TimeUnit.MILLISECONDS);
+
+        if (logSampleRate > 0
+                && ThreadLocalRandom.current().nextDouble() < logSampleRate) {
+            logger.info(
+                    "Event trace for {} up to {}: queue {} ms, notify {} ms, dispatch {} us, deliver {} us, total {} ms",
+                    trace.logId(), Long.valueOf(trace.id()),
+                    Long.valueOf(trace.queueMillis()),
+                    Long.valueOf(trace.notifyMillis()),
+                    Long.valueOf(trace.dispatchNanos() / 1000),
+                    Long.valueOf(deliverNanos / 1000),
+                    Long.valueOf(totalMillis));
+        }
+    }
+}
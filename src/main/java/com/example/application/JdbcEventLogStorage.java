@@ -0,0 +1,99 @@
+package com.example.application;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+/**
+ * Event storage using prepared statements directly on the connection pool,
+ * without going through JPA entity management.
+ */
+@Component
+@ConditionalOnProperty(name = "pg-backend.storage", havingValue = "jdbc")
+public class JdbcEventLogStorage implements EventLogStorage {
+    private final JdbcTemplate jdbc;
+
+    public JdbcEventLogStorage(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public void notify(String channel, String payload) {
+        jdbc.query("select pg_notify(?, ?)", resultSet -> {
+        }, channel, payload);
+    }
+
+    @Override
+    public Optional<Long> getSequenceIdByEventId(String logId,
+            UUID eventId) {
+        return jdbc.query(
+                "select id from event_log_entry where log_id = ? and event_id = ?",
+                (resultSet, row) -> resultSet.getLong(1), logId, eventId)
+                .stream().findFirst();
+    }
+
+    @Override
+    public List<EventLogEntry> findPageNewerThan(long sequenceId,
+            String logId, int limit) {
+        return jdbc.query(
+                "select id, event_id, payload, payload_data from event_log_entry where log_id = ? and id > ? order by id limit ?",
+                mapper(logId), logId, sequenceId, limit);
+    }
+
+    @Override
+    public List<EventLogEntry> findRange(String logId, long fromId,
+            long toId) {
+        return jdbc.query(
+                "select id, event_id, payload, payload_data from event_log_entry where log_id = ? and id between ? and ? order by id",
+                mapper(logId), logId, fromId, toId);
+    }
+
+    @Override
+    public long countRange(String logId, long fromId, long toId) {
+        return jdbc.queryForObject(
+                "select count(*) from event_log_entry where log_id = ? and id between ? and ?",
+                Long.class, logId, fromId, toId).longValue();
+    }
+
+    @Override
+    public List<EventLogEntry> findLatestOfLogs(Collection<String> logIds,
+            int limit) {
+        // Reads each log through the (log_id, id) index
+        return jdbc.query(
+                "select e.id, e.event_id, e.log_id, e.payload, e.payload_data from unnest(?::text[]) as l(log_id) cross join lateral (select * from event_log_entry where log_id = l.log_id order by id desc limit ?) e order by e.log_id, e.id",
+                (resultSet, row) -> new EventLogEntry(resultSet.getLong(1),
+                        resultSet.getObject(2, UUID.class),
+                        resultSet.getString(3),
+                        PayloadCodec.decode(resultSet.getString(4),
+                                resultSet.getBytes(5))),
+                logIds.toArray(String[]::new), limit);
+    }
+
+    private static RowMapper<EventLogEntry> mapper(String logId) {
+        return (resultSet, row) -> new EventLogEntry(resultSet.getLong(1),
+                resultSet.getObject(2, UUID.class), logId,
+                PayloadCodec.decode(resultSet.getString(3),
+                        resultSet.getBytes(4)));
+    }
+
+    @Override
+    public int deleteOlderThan(String logId, long sequenceId,
+            int batchSize) {
+        return jdbc.update(
+                "delete from event_log_entry where log_id = ? and id in (select id from event_log_entry where log_id = ? and id < ? order by id limit ?)",
+                logId, logId, sequenceId, batchSize);
+    }
+
+    @Override
+    public void recordTruncation(String logId, long olderThan) {
+        jdbc.update(
+                "insert into event_log_truncation as t (log_id, older_than) values (?, ?) on conflict (log_id) do update set older_than = greatest(t.older_than, excluded.older_than)",
+                logId, olderThan);
+    }
+}
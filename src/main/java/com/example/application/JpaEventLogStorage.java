@@ -0,0 +1,71 @@
+package com.example.application;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "pg-backend.storage", havingValue = "jpa", matchIfMissing = true)
+public class JpaEventLogStorage implements EventLogStorage {
+    private final EventLogRepository eventLogs;
+
+    public JpaEventLogStorage(EventLogRepository eventLogs) {
+        this.eventLogs = eventLogs;
+    }
+
+    @Override
+    public void notify(String channel, String payload) {
+        eventLogs.notify(channel, payload);
+    }
+
+    @Override
+    public Optional<Long> getSequenceIdByEventId(String logId,
+            UUID eventId) {
+        return eventLogs.getSequenceIdByEventId(logId, eventId);
+    }
+
+    @Override
+    public List<EventLogEntry> findPageNewerThan(long sequenceId,
+            String logId, int limit) {
+        return eventLogs.findPageNewerThan(sequenceId, logId, limit);
+    }
+
+    @Override
+    public List<EventLogEntry> findRange(String logId, long fromId,
+            long toId) {
+        return eventLogs.findRange(logId, fromId, toId);
+    }
+
+    @Override
+    public long countRange(String logId, long fromId, long toId) {
+        return eventLogs.countRange(logId, fromId, toId);
+    }
+
+    @Override
+    public List<EventLogEntry> findLatestOfLogs(Collection<String> logIds,
+            int limit) {
+        // Rows rather than entities since entities of several logs would
+        // share a persistence context
+        return eventLogs.findLatestOfLogs(logIds.toArray(String[]::new), limit)
+                .stream()
+                .map(row -> new EventLogEntry(row.getId(), row.getEventId(),
+                        row.getLogId(), PayloadCodec.decode(row.getPayload(),
+                                row.getPayloadData())))
+                .toList();
+    }
+
+    @Override
+    public int deleteOlderThan(String logId, long sequenceId,
+            int batchSize) {
+        return eventLogs.deleteOlderThan(logId, sequenceId, batchSize);
+    }
+
+    @Override
+    public void recordTruncation(String logId, long olderThan) {
+        eventLogs.recordTruncation(logId, olderThan);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.application;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.example.application.PgNotifyListener.ListenResult;
+
+/**
+ * Maps event logs onto NOTIFY channels. By default, every log has a channel of
+ * its own. In shared mode, logs are hashed onto a fixed set of channels that
+ * are listened to once at startup, the log id is prefixed to each payload and
+ * notifications are routed to the right log in memory.
+ */
+public class LogChannels {
+    private static final String SHARED_CHANNEL_PREFIX = "ce_events_";
+
+    private static final char SEPARATOR = ':';
+
+    private final PgNotifyListener notifyListener;
+
+    private final List<ListenResult> sharedChannels = new ArrayList<>();
+
+    private final Map<String, Consumer<List<String>>> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new channel mapping.
+     *
+     * @param notifyListener
+     *            the listener to register channels with
+     * @param sharedChannelCount
+     *            the number of shared channels, or 0 to use one channel per
+     *            log
+     */
+    public LogChannels(PgNotifyListener notifyListener,
+            int sharedChannelCount) {
+        this.notifyListener = notifyListener;
+        for (int i = 0; i < sharedChannelCount; i++) {
+            sharedChannels.add(notifyListener
+                    .listenToBatches(SHARED_CHANNEL_PREFIX + i, this::route));
+        }
+    }
+
+    private boolean isShared() {
+        return !sharedChannels.isEmpty();
+    }
+
+    private int channelIndex(String logId) {
+        return Math.floorMod(logId.hashCode(), sharedChannels.size());
+    }
+
+    /**
+     * Gets the name of the channel that notifications for the given log are
+     * sent to.
+     */
+    public String channelFor(String logId) {
+        if (!isShared()) {
+            return logId;
+        }
+        return SHARED_CHANNEL_PREFIX + channelIndex(logId);
+    }
+
+    /**
+     * Creates the payload to send for the given log, adding the log id if the
+     * channel is shared.
+     */
+    public String encode(String logId, String payload) {
+        if (!isShared()) {
+            return payload;
+        }
+        return logId.length() + String.valueOf(SEPARATOR) + logId + payload;
+    }
+
+    /**
+     * Gets the number of payload bytes that {@link #encode(String, String)}
+     * adds for the given log.
+     */
+    public int getOverhead(String logId) {
+        if (!isShared()) {
+            return 0;
+        }
+        return logId.getBytes(StandardCharsets.UTF_8).length
+                + Integer.toString(logId.length()).length() + 1;
+    }
+
+    /**
+     * Starts delivering notification payloads for the given log to a
+     * listener. Payloads that arrive together are passed on as one batch, in
+     * the order they were sent. There can be only one listener for each log
+     * at a time.
+     */
+    public ListenResult listen(String logId,
+            Consumer<List<String>> listener) {
+        if (!isShared()) {
+            return notifyListener.listenToBatches(logId, listener);
+        }
+
+        routes.put(logId, listener);
+        return new ListenResult(
+                sharedChannels.get(channelIndex(logId)).whenRegistered(),
+                () -> routes.remove(logId, listener));
+    }
+
+    private void route(List<String> payloads) {
+        Map<String, List<String>> byLog = new LinkedHashMap<>();
+        for (String payload : payloads) {
+            route(payload, byLog);
+        }
+        byLog.forEach((logId, logPayloads) -> {
+            Consumer<List<String>> listener = routes.get(logId);
+            if (listener != null) {
+                listener.accept(logPayloads);
+            }
+        });
+    }
+
+    private static void route(String payload,
+            Map<String, List<String>> byLog) {
+        int separator = payload.indexOf(SEPARATOR);
+        if (separator == -1) {
+            return;
+        }
+
+        int logIdEnd;
+        try {
+            logIdEnd = separator + 1
+                    + Integer.parseInt(payload.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (logIdEnd > payload.length()) {
+            return;
+        }
+
+        byLog.computeIfAbsent(payload.substring(separator + 1, logIdEnd),
+                x -> new ArrayList<>()).add(payload.substring(logIdEnd));
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.application;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Converts payloads to and from their stored form. Payloads are stored either
+ * as text or, in the binary format, in a separate <code>bytea</code> column.
+ * The first byte of binary data tells how the rest is encoded: either plain
+ * UTF-8, or UTF-8 compressed with LZ4 and preceded by its uncompressed length
+ * as four bytes. Payloads are only compressed if they are at least as long as
+ * the configured threshold and the result is smaller. Reading supports both
+ * formats regardless of which one is used for writing.
+ */
+public class PayloadCodec {
+    /**
+     * The values to write to the text and binary payload columns, one of
+     * which is always <code>null</code>.
+     */
+    public record Stored(String text, byte[] data) {
+    }
+
+    private static final byte PLAIN = 0;
+    private static final byte LZ4 = 1;
+
+    private static final int LZ4_HEADER = 5;
+
+    private static final LZ4Factory lz4 = LZ4Factory.fastestInstance();
+
+    private final boolean binary;
+    private final int compressionThreshold;
+
+    public PayloadCodec(PgBackendProperties.PayloadStorage settings) {
+        binary = settings
+                .getFormat() == PgBackendProperties.PayloadStorage.Format.BINARY;
+        compressionThreshold = settings.getCompressionThreshold();
+    }
+
+    public Stored store(String payload) {
+        if (binary) {
+            return new Stored(null, encode(payload));
+        }
+        return new Stored(payload, null);
+    }
+
+    public byte[] encode(String payload) {
+        byte[] utf8 = payload.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length >= compressionThreshold) {
+            LZ4Compressor compressor = lz4.fastCompressor();
+            byte[] compressed = new byte[LZ4_HEADER
+                    + compressor.maxCompressedLength(utf8.length)];
+            compressed[0] = LZ4;
+            writeInt(compressed, 1, utf8.length);
+            int length = LZ4_HEADER + compressor.compress(utf8, 0,
+                    utf8.length, compressed, LZ4_HEADER,
+                    compressed.length - LZ4_HEADER);
+            if (length < utf8.length + 1) {
+                return Arrays.copyOf(compressed, length);
+            }
+        }
+
+        byte[] plain = new byte[utf8.length + 1];
+        plain[0] = PLAIN;
+        System.arraycopy(utf8, 0, plain, 1, utf8.length);
+        return plain;
+    }
+
+    public static String decode(byte[] data) {
+        switch (data[0]) {
+        case PLAIN:
+            return new String(data, 1, data.length - 1,
+                    StandardCharsets.UTF_8);
+        case LZ4:
+            LZ4FastDecompressor decompressor = lz4.fastDecompressor();
+            byte[] utf8 = new byte[readInt(data, 1)];
+            decompressor.decompress(data, LZ4_HEADER, utf8, 0, utf8.length);
+            return new String(utf8, StandardCharsets.UTF_8);
+        default:
+            throw new IllegalArgumentException(
+                    "Unknown payload encoding " + data[0]);
+        }
+    }
+
+    /**
+     * Gets the payload from whichever of the two storage columns is in use.
+     */
+    public static String decode(String text, byte[] data) {
+        if (text != null || data == null) {
+            return text;
+        }
+        return decode(data);
+    }
+
+    private static void writeInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] source, int offset) {
+        return (source[offset] & 0xff) << 24
+                | (source[offset + 1] & 0xff) << 16
+                | (source[offset + 2] & 0xff) << 8
+                | (source[offset + 3] & 0xff);
+    }
+}
@@ -1,140 +1,1140 @@
 package com.example.application;
 
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
+import javax.sql.DataSource;
+
 import org.postgresql.jdbc.PgConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import com.example.application.PgBackendProperties.Delivery.OverflowPolicy;
 import com.example.application.PgNotifyListener.ListenResult;
 import com.vaadin.collaborationengine.Backend;
 import com.vaadin.collaborationengine.MembershipListener;
 import com.vaadin.flow.shared.Registration;
 import com.zaxxer.hikari.util.DriverDataSource;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
 @Service
 public class PgBackend extends Backend {
 
+    /**
+     * An event waiting for the consumer of a subscription, with the trace of
+     * its notification if it's the last event of a traced notification.
+     */
+    private record QueuedEvent(long id, UUID eventId, String payload,
+            EventTracer.Trace trace) {
+    }
+
+    /**
+     * A subscriber to a log. Events are handed over by the dispatcher of the
+     * log into a bounded queue that is drained on a virtual thread of its
+     * own, so that a slow consumer only holds up itself. When the queue is
+     * full, the overflow policy decides how the subscriber gets the events it
+     * missed, if at all.
+     */
     private final class Subscription {
         private final String logId;
         private final BiConsumer<UUID, String> eventConsumer;
 
-        private long lastSeenId = -1;
+        // Guarded by the lock of the owner
+        private final long startId;
+        private long lastSeenId;
+        private boolean caughtUp = false;
+
+        private volatile LogSubscriptions owner;
+        private volatile boolean removed;
+
+        private final ReentrantLock queueLock = new ReentrantLock();
+        private final AtomicBoolean drainScheduled = new AtomicBoolean();
+        // Guarded by queueLock
+        private final Queue<QueuedEvent> queue = new ArrayDeque<>();
+        private long queuedId;
+        private long deliveredId;
+        private UUID deliveredEventId;
+        // The policy being applied, or null if the queue hasn't overflowed
+        private OverflowPolicy overflow;
+        private long droppedCount;
+        // Dropped events that committed late and thus might not be read
+        // again from the last delivered event
+        private final NavigableSet<Long> droppedLateIds = new TreeSet<>();
 
         public Subscription(String logId, UUID newerThan,
-                BiConsumer<UUID, String> eventConsumer) {
+                BiConsumer<UUID, String> eventConsumer)
+                throws EventIdNotFoundException {
             this.logId = logId;
             this.eventConsumer = eventConsumer;
 
             if (newerThan != null) {
-                lastSeenId = eventLogs.getSequenceIdByEventId(newerThan);
+                startId = tailCache.findSequenceId(logId, newerThan)
+                        .or(() -> findSequenceId(logId, newerThan))
+                        .orElseThrow(() -> new EventIdNotFoundException(
+                                "No event with id " + newerThan))
+                        .longValue();
+            } else {
+                startId = -1;
             }
+            lastSeenId = startId;
+            queuedId = startId;
+            deliveredId = startId;
+            deliveredEventId = newerThan;
         }
 
-        public void handleNotification() {
+        /**
+         * Adds this subscription to the subscriptions of its log.
+         */
+        private void attach() {
+            while (true) {
+                LogSubscriptions logSubscriptions = logs.computeIfAbsent(logId,
+                        LogSubscriptions::new);
+                // Retry if the last subscription was just removed
+                if (logSubscriptions.add(this)) {
+                    return;
+                }
+            }
+        }
+
+        private void unsubscribe() {
+            removed = true;
+            LogSubscriptions current = owner;
+            if (current != null) {
+                current.remove(this);
+            }
             try {
-                lock.lock();
-                List<EventLogEntry> events = eventLogs
-                        .findAllNewerThan(lastSeenId, logId);
-                events.forEach(event -> {
-                    eventConsumer.accept(event.getEventId(),
-                            event.getPayload());
-                    lastSeenId = event.getId();
-                });
+                queueLock.lock();
+                metrics.eventsDequeued(queue.size());
+                queue.clear();
             } finally {
-                lock.unlock();
+                queueLock.unlock();
+            }
+        }
+
+        /**
+         * Queues an event for the consumer. Called with the lock of the owner
+         * held.
+         *
+         * @param late
+         *            <code>true</code> if the event is delivered after events
+         *            with higher ids
+         * @param trace
+         *            the trace to record once the consumer has been called,
+         *            or <code>null</code>
+         */
+        private void deliver(long id, UUID eventId, String payload,
+                boolean late, EventTracer.Trace trace) {
+            lastSeenId = Math.max(lastSeenId, id);
+
+            int depth;
+            OverflowPolicy policy = null;
+            UUID lastDelivered = null;
+            try {
+                queueLock.lock();
+                if (id <= queuedId && !late) {
+                    // Already read after an overflow
+                    return;
+                } else if (overflow != null) {
+                    // Read again when the overflow is handled
+                    droppedCount++;
+                    if (late) {
+                        droppedLateIds.add(Long.valueOf(id));
+                    }
+                    depth = 0;
+                } else if (queue.size() >= deliverySettings.getMaxQueued()) {
+                    // Anything up to the last delivered event that is still
+                    // queued committed late
+                    for (QueuedEvent queued : queue) {
+                        if (queued.id() <= deliveredId) {
+                            droppedLateIds.add(Long.valueOf(queued.id()));
+                        }
+                    }
+                    if (late) {
+                        droppedLateIds.add(Long.valueOf(id));
+                    }
+                    metrics.eventsDequeued(queue.size());
+                    queue.clear();
+                    // A backlog that doesn't fit is read again at the pace of
+                    // the consumer regardless of the policy
+                    policy = caughtUp ? deliverySettings.getOverflowPolicy()
+                            : OverflowPolicy.COALESCE;
+                    overflow = policy;
+                    lastDelivered = deliveredEventId;
+                    depth = -1;
+                } else {
+                    queue.add(new QueuedEvent(id, eventId, payload, trace));
+                    queuedId = Math.max(queuedId, id);
+                    depth = queue.size();
+                }
+            } finally {
+                queueLock.unlock();
+            }
+
+            if (policy != null) {
+                overflowed(policy, lastDelivered);
+            } else if (depth > 0) {
+                metrics.eventQueued(depth);
+            }
+            scheduleDrain();
+        }
+
+        private void overflowed(OverflowPolicy policy, UUID lastDelivered) {
+            metrics.deliveryOverflowed(policy);
+            if (policy == OverflowPolicy.DISCONNECT) {
+                // The consumer can't be told, so the next call for the log
+                // fails instead
+                String message = "Disconnected a subscriber to " + logId
+                        + " since its delivery queue was full. It got no events after "
+                        + lastDelivered + ".";
+                logger.error(message);
+                disconnectedLogs.put(logId, message);
+                removed = true;
+            } else {
+                logger.warn(
+                        "Delivery queue for a subscriber to {} is full, applying {}",
+                        logId, policy);
+            }
+            if (policy != OverflowPolicy.COALESCE) {
+                owner.remove(this);
+            }
+        }
+
+        private void scheduleDrain() {
+            if (drainScheduled.compareAndSet(false, true)) {
+                deliveryExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            boolean failed = false;
+            try {
+                QueuedEvent event;
+                while ((event = poll()) != null) {
+                    accept(event.eventId(), event.payload());
+                    if (event.trace() != null) {
+                        tracer.delivered(event.trace());
+                    }
+                }
+                OverflowPolicy policy;
+                try {
+                    queueLock.lock();
+                    policy = queue.isEmpty() ? overflow : null;
+                } finally {
+                    queueLock.unlock();
+                }
+                if (removed) {
+                    return;
+                } else if (policy == OverflowPolicy.COALESCE) {
+                    readMissed();
+                } else if (policy == OverflowPolicy.RESUBSCRIBE) {
+                    resubscribe();
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to deliver events for " + logId, e);
+                failed = true;
+            } finally {
+                drainScheduled.set(false);
+            }
+
+            // Pick up anything that was queued or overflowed meanwhile. A
+            // failed read is retried when the next event arrives.
+            try {
+                queueLock.lock();
+                if (removed || queue.isEmpty()
+                        && (overflow == null || failed)) {
+                    return;
+                }
+            } finally {
+                queueLock.unlock();
+            }
+            scheduleDrain();
+        }
+
+        private QueuedEvent poll() {
+            try {
+                queueLock.lock();
+                QueuedEvent event = queue.poll();
+                if (event != null) {
+                    metrics.eventsDequeued(1);
+                    recordDelivered(event.id(), event.eventId());
+                }
+                return event;
+            } finally {
+                queueLock.unlock();
+            }
+        }
+
+        private void accept(UUID eventId, String payload) {
+            try {
+                eventConsumer.accept(eventId, payload);
+            } catch (RuntimeException e) {
+                logger.error("Event consumer failed for event " + eventId
+                        + " of " + logId, e);
+            }
+        }
+
+        private void recordDelivered(long id, UUID eventId) {
+            if (id > deliveredId) {
+                deliveredId = id;
+                deliveredEventId = eventId;
+            }
+        }
+
+        /**
+         * Reads and delivers everything after the last delivered event,
+         * repeating until no events have been dropped while reading. This
+         * way, the events that overflowed the queue are coalesced into reads
+         * that are paced by the consumer. Dropped events that committed late
+         * are read by their ids once the reads have passed them.
+         */
+        private void readMissed() {
+            while (!removed) {
+                long from;
+                long droppedBefore;
+                try {
+                    queueLock.lock();
+                    from = deliveredId;
+                    droppedBefore = droppedCount;
+                } finally {
+                    queueLock.unlock();
+                }
+
+                int pageSize = properties.getCatchUpPageSize();
+                List<EventLogEntry> events = tailCache
+                        .findAllNewerThan(logId, from).orElse(null);
+                boolean complete = events != null;
+                if (events == null) {
+                    events = eventLogs.findPageNewerThan(from, logId,
+                            pageSize);
+                    metrics.catchUpPageRead(events.size());
+                    complete = events.size() < pageSize;
+                }
+                for (EventLogEntry event : events) {
+                    try {
+                        queueLock.lock();
+                        recordDelivered(event.getId(), event.getEventId());
+                        queuedId = Math.max(queuedId, event.getId());
+                        droppedLateIds.remove(Long.valueOf(event.getId()));
+                    } finally {
+                        queueLock.unlock();
+                    }
+                    accept(event.getEventId(), event.getPayload());
+                }
+                // Anything left after a complete read won't be read by it
+                readDroppedLate(complete);
+
+                try {
+                    queueLock.lock();
+                    if (complete && droppedCount == droppedBefore
+                            && droppedLateIds.isEmpty()) {
+                        overflow = null;
+                        return;
+                    }
+                } finally {
+                    queueLock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Reads and delivers the dropped late events by their ids.
+         *
+         * @param all
+         *            <code>false</code> to only read the events up to the
+         *            last delivered event and leave the others to reading
+         *            everything after it, so that they aren't delivered twice
+         */
+        private void readDroppedLate(boolean all) {
+            List<Long> ids;
+            try {
+                queueLock.lock();
+                NavigableSet<Long> passed = all ? droppedLateIds
+                        : droppedLateIds.headSet(Long.valueOf(deliveredId),
+                                true);
+                ids = new ArrayList<>(passed);
+                passed.clear();
+            } finally {
+                queueLock.unlock();
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+
+            List<EventLogEntry> events = eventLogs.findRange(logId,
+                    ids.get(0).longValue(),
+                    ids.get(ids.size() - 1).longValue());
+            metrics.backfillRead(events.size());
+            Set<Long> wanted = new HashSet<>(ids);
+            for (EventLogEntry event : events) {
+                if (wanted.contains(Long.valueOf(event.getId()))) {
+                    accept(event.getEventId(), event.getPayload());
+                }
+            }
+        }
+
+        /**
+         * Adds this subscription back to its log from the last delivered
+         * event after it was removed because its queue overflowed.
+         */
+        private void resubscribe() {
+            readDroppedLate(true);
+            long from;
+            try {
+                queueLock.lock();
+                overflow = null;
+                queuedId = deliveredId;
+                from = deliveredId;
+            } finally {
+                queueLock.unlock();
+            }
+            // Not attached, so there's no owner lock to hold
+            lastSeenId = from;
+            attach();
+            if (removed) {
+                owner.remove(this);
+            }
+        }
+
+        private void recordResumePoint() {
+            try {
+                queueLock.lock();
+                if (deliveredEventId != null) {
+                    tailCache.recordResumePoint(logId, deliveredEventId,
+                            deliveredId);
+                }
+            } finally {
+                queueLock.unlock();
+            }
+        }
+
+        /**
+         * Checks whether this subscription reads the events it misses on its
+         * own since its queue has overflowed.
+         */
+        private boolean isOverflowed() {
+            try {
+                queueLock.lock();
+                return overflow != null;
+            } finally {
+                queueLock.unlock();
             }
         }
+
+        /**
+         * Checks whether this subscription has moved past the given id
+         * without having been able to deliver it.
+         */
+        private boolean hasSkipped(long id) {
+            return startId < id && id < lastSeenId;
+        }
     }
 
-    private final class EventLogImplementation implements EventLog {
+    /**
+     * A notification payload with the time when the listener received it,
+     * both as wall clock time for comparing with the submitting node and as
+     * <code>System.nanoTime()</code> for local intervals.
+     */
+    private record ReceivedNotification(String payload, long receivedMillis,
+            long receivedNanos) {
+    }
+
+    /**
+     * The fan-out point for all subscriptions to the same log on this node.
+     * Listens once for the log and runs a single catch-up query on behalf of
+     * all its subscriptions. Notifications are queued by the listener thread
+     * and dispatched serially on a separate thread so that a slow query for
+     * one log doesn't hold up notifications for other logs. All state is
+     * guarded by a lock of its own so that different logs don't contend.
+     */
+    private final class LogSubscriptions {
         private final String logId;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Set<Subscription> subscriptions = new HashSet<>();
+        private ListenResult listenResult;
+        private boolean closed;
 
-        private EventLogImplementation(String logId) {
+        private final Queue<ReceivedNotification> pendingNotifications = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean catchUpRequested = new AtomicBoolean();
+        private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+        private volatile long dispatchScheduledAt;
+
+        private final SequenceGaps gaps = new SequenceGaps(
+                properties.getGapTracking());
+        private long highestDelivered = -1;
+        // Whether a read stopped before the last event, so that the ids up
+        // to the next delivered event are unread rather than skipped
+        private boolean readStopped;
+
+        /**
+         * Traces of the notifications being handled, by the id of the last
+         * event of each.
+         */
+        private final Map<Long, EventTracer.Trace> traces = new HashMap<>();
+
+        private LogSubscriptions(String logId) {
             this.logId = logId;
         }
 
-        @Override
-        public void truncate(UUID olderThan) {
-            System.out
-                    .println("Truncate is left as an exercise for the reader");
+        /**
+         * Adds a subscription unless this instance has already been removed
+         * from {@link PgBackend#logs}.
+         *
+         * @return <code>true</code> if the subscription was added
+         */
+        private boolean add(Subscription subscription) {
+            CompletableFuture<Void> whenRegistered;
+            try {
+                lock.lock();
+                if (closed) {
+                    return false;
+                }
+                if (listenResult == null) {
+                    listenResult = channels.listen(logId, payloads -> {
+                        long receivedMillis = System.currentTimeMillis();
+                        long receivedNanos = System.nanoTime();
+                        for (String payload : payloads) {
+                            pendingNotifications.add(new ReceivedNotification(
+                                    payload, receivedMillis, receivedNanos));
+                        }
+                        scheduleDispatch();
+                    });
+                }
+                subscription.owner = this;
+                subscription.caughtUp = false;
+                subscriptions.add(subscription);
+                metrics.subscriptionCountChanged(1, subscriptions.size());
+                whenRegistered = listenResult.whenRegistered();
+            } finally {
+                lock.unlock();
+            }
+
+            // Deliver initial updates
+            whenRegistered.thenRun(this::requestCatchUp);
+            return true;
         }
 
-        @Override
-        public Registration subscribe(UUID newerThan,
-                BiConsumer<UUID, String> eventConsumer)
-                throws EventIdNotFoundException {
+        private void remove(Subscription subscription) {
             try {
                 lock.lock();
+                if (!subscriptions.remove(subscription)) {
+                    return;
+                }
+                subscription.owner = null;
+                metrics.subscriptionCountChanged(-1, subscriptions.size());
+                // Resubscribing from where this one ended is the common case
+                subscription.recordResumePoint();
+                if (subscriptions.isEmpty()) {
+                    closed = true;
+                    logs.remove(logId, this);
 
-                Subscription subscription = new Subscription(logId, newerThan,
-                        eventConsumer);
-                Set<Subscription> subscriptions = logs.computeIfAbsent(logId,
-                        x -> new HashSet<>());
-                subscriptions.add(subscription);
+                    listenResult.unregister().remove();
+                    tailCache.markStale(logId);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
 
-                ListenResult listenResult = notifyListener.listen(logId,
-                        ignore -> subscription.handleNotification());
-                // Deliver initial updates
-                listenResult.whenRegistered()
-                        .thenRun(subscription::handleNotification);
+        private void requestCatchUp() {
+            catchUpRequested.set(true);
+            scheduleDispatch();
+        }
 
-                return () -> {
-                    try {
-                        lock.lock();
+        private void scheduleDispatch() {
+            if (dispatchScheduled.compareAndSet(false, true)) {
+                dispatchScheduledAt = System.nanoTime();
+                dispatcher.execute(this::dispatch);
+            }
+        }
 
-                        subscriptions.remove(subscription);
-                        if (subscriptions.isEmpty()) {
-                            logs.remove(logId);
+        private void dispatch() {
+            metrics.dispatchStarted(dispatchScheduledAt);
+            try {
+                lock.lock();
+                if (catchUpRequested.getAndSet(false)) {
+                    catchUp(true);
+                }
 
-                            listenResult.unregister();
+                List<ReceivedNotification> batch;
+                while (!(batch = pollNotifications()).isEmpty()) {
+                    handleNotifications(batch);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to dispatch events for " + logId, e);
+            } finally {
+                lock.unlock();
+                dispatchScheduled.set(false);
+            }
+
+            // Pick up anything that was queued after the last poll
+            if (catchUpRequested.get() || !pendingNotifications.isEmpty()) {
+                scheduleDispatch();
+            }
+        }
+
+        private List<ReceivedNotification> pollNotifications() {
+            List<ReceivedNotification> batch = new ArrayList<>();
+            ReceivedNotification received;
+            while ((received = pendingNotifications.poll()) != null) {
+                batch.add(received);
+            }
+            return batch;
+        }
+
+        /**
+         * Handles notifications in the order they were sent. Consecutive
+         * notifications of the same kind are merged into one that covers all
+         * their ids and inline events, so that a burst is handled at once
+         * and triggers at most one read rather than one per notification.
+         */
+        private void handleNotifications(List<ReceivedNotification> batch) {
+            long dispatched = System.nanoTime();
+            List<EventNotification> notifications = new ArrayList<>();
+            for (ReceivedNotification received : batch) {
+                notifications.add(
+                        EventNotification.parse(logId, received.payload()));
+            }
+
+            int start = 0;
+            while (start < batch.size()) {
+                EventNotification notification = notifications.get(start);
+                int end = start + 1;
+                while (end < batch.size()
+                        && canMerge(notification, notifications.get(end))) {
+                    notification = merge(notification,
+                            notifications.get(end++));
+                }
+
+                for (int i = start; i < end; i++) {
+                    ReceivedNotification received = batch.get(i);
+                    if (notifications.get(i) != null
+                            && !subscriptions.isEmpty()) {
+                        EventTracer.Trace trace = tracer.dispatched(logId,
+                                notifications.get(i),
+                                received.receivedMillis(),
+                                received.receivedNanos(), dispatched);
+                        if (trace != null) {
+                            traces.put(Long.valueOf(trace.id()), trace);
                         }
-                    } finally {
-                        lock.unlock();
                     }
-                };
+                }
+
+                metrics.notificationDispatched(subscriptions.size());
+                try {
+                    handleNotification(notification);
+                } finally {
+                    // Events that were already delivered aren't traced
+                    traces.clear();
+                }
+                start = end;
+            }
+        }
+
+        private static boolean canMerge(EventNotification notification,
+                EventNotification next) {
+            return notification != null && next != null
+                    && notification.isInline() == next.isInline();
+        }
+
+        private static EventNotification merge(EventNotification notification,
+                EventNotification next) {
+            List<EventLogEntry> events = new ArrayList<>(notification.events());
+            events.addAll(next.events());
+            return new EventNotification(
+                    Math.min(notification.firstId(), next.firstId()),
+                    Math.max(notification.id(), next.id()), events, null);
+        }
+
+        private void handleNotification(EventNotification notification) {
+            if (notification != null && notification.isInline()) {
+                List<Subscription> targets = new ArrayList<>();
+                boolean needsCatchUp = false;
+                for (Subscription subscription : subscriptions) {
+                    if (subscription.caughtUp) {
+                        targets.add(subscription);
+                    } else {
+                        needsCatchUp = true;
+                    }
+                }
+                if (perLogSequence && !targets.isEmpty()) {
+                    readMissed(targets, notification.firstId());
+                }
+
+                for (EventLogEntry event : notification.events()) {
+                    tailCache.recordEvent(logId, event.getId(),
+                            event.getEventId(), event.getPayload());
+                }
+                deliver(targets, notification.events());
+
+                if (!needsCatchUp) {
+                    return;
+                }
+            } else if (notification != null) {
+                backfill(notification);
+                if (isCovered(notification)) {
+                    // Already read by a catch-up that ran after it was sent
+                    return;
+                }
+            }
+
+            catchUp(false);
+        }
+
+        /**
+         * Reads the events of a notification that may have committed after
+         * events with higher ids were delivered. Only the ids that were
+         * skipped are queried rather than everything after them.
+         */
+        private void backfill(EventNotification notification) {
+            long to = Math.min(notification.id(), highestDelivered);
+            if (!gaps.intersects(notification.firstId(), to)) {
+                return;
+            }
+
+            List<EventLogEntry> events = eventLogs.findRange(logId,
+                    notification.firstId(), to);
+            metrics.backfillRead(events.size());
+            for (EventLogEntry event : events) {
+                tailCache.recordEvent(logId, event.getId(),
+                        event.getEventId(), event.getPayload());
+            }
+            deliver(List.copyOf(subscriptions), events);
+        }
+
+        /**
+         * Reads the events between the highest delivered position and the
+         * first event of a notification. Positions are dense with the
+         * per-log sequence mode, so any difference means that events were
+         * missed, e.g. with a notification that was lost, and exactly those
+         * can be read instead of a full catch-up.
+         */
+        private void readMissed(List<Subscription> targets, long firstId) {
+            long expected = Math.max(highestDelivered, 0) + 1;
+            if (firstId <= expected) {
+                return;
+            }
+
+            List<EventLogEntry> events = eventLogs.findRange(logId, expected,
+                    firstId - 1);
+            metrics.backfillRead(events.size());
+            for (EventLogEntry event : events) {
+                tailCache.recordEvent(logId, event.getId(),
+                        event.getEventId(), event.getPayload());
+            }
+            deliver(targets, events);
+        }
+
+        private boolean isCovered(EventNotification notification) {
+            for (Subscription subscription : subscriptions) {
+                if (!subscription.caughtUp
+                        || subscription.lastSeenId < notification.id()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reads once from the lowest position that any subscription still
+         * needs and delivers to each subscription the events it has not yet
+         * seen. The read may be served from the tail cache unless it was
+         * triggered by a notification for an event that wasn't delivered
+         * inline.
+         */
+        private void catchUp(boolean allowCache) {
+            try {
+                lock.lock();
+                if (subscriptions.isEmpty()) {
+                    return;
+                }
+
+                List<Subscription> targets = List.copyOf(subscriptions);
+                long from = targets.stream()
+                        .mapToLong(subscription -> subscription.lastSeenId)
+                        .min().getAsLong();
+                // Nothing before the start of the read is tracked
+                highestDelivered = Math.max(highestDelivered, from);
+
+                List<EventLogEntry> cached = allowCache
+                        ? tailCache.findAllNewerThan(logId, from).orElse(null)
+                        : null;
+                if (cached != null) {
+                    deliver(targets, cached);
+                } else {
+                    read(targets, from);
+                }
+
+                for (Subscription subscription : targets) {
+                    // Unless removed since its queue overflowed
+                    if (subscription.owner == this) {
+                        subscription.caughtUp = true;
+                    }
+                }
             } finally {
                 lock.unlock();
             }
         }
 
+        /**
+         * Reads and delivers everything after the given id page by page. The
+         * read stops early if the queues of all subscriptions overflow, since
+         * they then read the remaining events at the pace of their consumers
+         * and reading them here as well would read the backlog twice.
+         */
+        private void read(List<Subscription> targets, long from) {
+            try {
+                long pageFrom = from;
+                List<EventLogEntry> preloaded = findPreloaded(from);
+                tailCache.startRead(logId, from);
+                if (!preloaded.isEmpty()) {
+                    tailCache.recordRead(logId, preloaded);
+                    pageFrom = preloaded.get(preloaded.size() - 1).getId();
+                    deliver(targets, preloaded);
+                }
+
+                int pageSize = properties.getCatchUpPageSize();
+                List<EventLogEntry> page;
+                do {
+                    if (allOverflowed(targets)) {
+                        readStopped = true;
+                        tailCache.markStale(logId);
+                        return;
+                    }
+                    page = eventLogs.findPageNewerThan(pageFrom, logId,
+                            pageSize);
+                    if (!page.isEmpty()) {
+                        metrics.catchUpPageRead(page.size());
+                        tailCache.recordRead(logId, page);
+                        pageFrom = page.get(page.size() - 1).getId();
+
+                        deliver(targets, page);
+                    }
+                } while (page.size() == pageSize);
+                // Only cover the range once all pages have been recorded,
+                // since a subscription may look at the tail meanwhile
+                tailCache.finishRead(logId);
+            } catch (RuntimeException e) {
+                // Don't let a partial read look like a complete one
+                tailCache.markStale(logId);
+                throw e;
+            }
+        }
+
+        private boolean allOverflowed(List<Subscription> targets) {
+            for (Subscription subscription : targets) {
+                if (subscription.owner == this
+                        && !subscription.isOverflowed()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Gets the events after the given id from a tail that was preloaded
+         * when the node started. Only the number of events in that range is
+         * queried to check that no event has committed late or been truncated
+         * since, which is cheaper than reading the events again.
+         */
+        private List<EventLogEntry> findPreloaded(long from) {
+            List<EventLogEntry> events = tailCache.findPreloaded(logId, from)
+                    .orElse(List.of());
+            if (events.isEmpty() || eventLogs.countRange(logId, from + 1,
+                    events.get(events.size() - 1).getId()) != events.size()) {
+                return List.of();
+            }
+            return events;
+        }
+
+        /**
+         * Delivers to each subscription the events that it has not yet seen.
+         * An event with a lower id than an already delivered event is also
+         * delivered to the subscriptions that skipped it, as long as it's
+         * within a tracked gap.
+         */
+        private void deliver(List<Subscription> targets,
+                List<EventLogEntry> events) {
+            for (EventLogEntry event : events) {
+                long id = event.getId();
+                boolean late = id <= highestDelivered && gaps.contains(id);
+                EventTracer.Trace trace = traces.isEmpty() ? null
+                        : traces.remove(Long.valueOf(id));
+                if (id > highestDelivered) {
+                    if (!readStopped) {
+                        gaps.skipped(highestDelivered, id);
+                    }
+                    readStopped = false;
+                    highestDelivered = id;
+                }
+
+                for (Subscription subscription : targets) {
+                    // Skip any that overflowed while delivering
+                    if (subscription.owner != this) {
+                        continue;
+                    }
+                    if (id > subscription.lastSeenId
+                            || late && subscription.hasSkipped(id)) {
+                        subscription.deliver(id, event.getEventId(),
+                                event.getPayload(), late, trace);
+                    }
+                }
+
+                if (late) {
+                    gaps.fill(id);
+                    metrics.lateEventDelivered();
+                }
+            }
+        }
+    }
+
+    private final class EventLogImplementation implements EventLog {
+        private final String logId;
+
+        private EventLogImplementation(String logId) {
+            this.logId = logId;
+        }
+
+        @Override
+        public void truncate(UUID olderThan) {
+            compactor.truncate(logId, olderThan);
+        }
+
+        @Override
+        public Registration subscribe(UUID newerThan,
+                BiConsumer<UUID, String> eventConsumer)
+                throws EventIdNotFoundException {
+            checkDisconnected();
+            Subscription subscription = new Subscription(logId, newerThan,
+                    eventConsumer);
+            subscription.attach();
+            return subscription::unsubscribe;
+        }
+
+        /**
+         * Doesn't wait for the event to be written since the caller may be a
+         * UI thread, and the event reaches it through its subscription once
+         * committed. A failure can't reach the caller, so it's logged and
+         * counted instead.
+         */
         @Override
         public void submitEvent(UUID trackingId, String eventPayload) {
-            eventLogs.submitEvent(trackingId, logId, eventPayload);
+            checkDisconnected();
+            submitter.submit(trackingId, logId, eventPayload)
+                    .whenComplete((ignore, e) -> {
+                        if (e != null) {
+                            metrics.submitFailed();
+                            logger.error("Failed to submit event " + trackingId
+                                    + " to " + logId, e);
+                        }
+                    });
+        }
+
+        /**
+         * Fails once if a subscription to this log has been disconnected
+         * since the last call.
+         */
+        private void checkDisconnected() {
+            String message = disconnectedLogs.remove(logId);
+            if (message != null) {
+                throw new IllegalStateException(message);
+            }
         }
     }
 
+    private static final Logger logger = LoggerFactory
+            .getLogger(PgBackend.class);
+
+    // How long the warmup waits for the notification listener to connect
+    private static final Duration WARMUP_TIMEOUT = Duration.ofSeconds(30);
+
     private final UUID nodeId = UUID.randomUUID();
 
-    private final ReentrantLock lock = new ReentrantLock();
-    private final Map<String, Set<Subscription>> logs = new HashMap<>();
+    private final Map<String, LogSubscriptions> logs = new ConcurrentHashMap<>();
+
+    // Logs with a disconnected subscription, to fail the next call with
+    private final Map<String, String> disconnectedLogs = new ConcurrentHashMap<>();
+
+    private final ExecutorService dispatcher = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("event-dispatcher-", 0).factory());
+
+    private final ExecutorService deliveryExecutor = Executors
+            .newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("event-delivery-", 0).factory());
 
     private final PgNotifyListener notifyListener;
 
-    private final EventLogRepository eventLogs;
+    private final LogChannels channels;
+
+    private final EventLogStorage eventLogs;
 
     private final SnapshotRepository snapshots;
 
-    public PgBackend(EventLogRepository eventLogs, SnapshotRepository snapshots,
-            DataSourceProperties props) {
+    private final ClusterNodeRepository clusterNodes;
+
+    private final PgBackendProperties properties;
+
+    private final EventTailCache tailCache;
+
+    private final SnapshotCache snapshotCache;
+
+    private final EventLogCompactor compactor;
+
+    private final EventSubmitter submitter;
+
+    private final DatabaseExecutor databaseExecutor;
+
+    private final PayloadCodec payloadCodec;
+
+    private ClusterMembership membership;
+
+    private final BackendMetrics metrics;
+
+    private final EventTracer tracer;
+
+    private final boolean perLogSequence;
+
+    private final PgBackendProperties.Delivery deliverySettings;
+
+    private final CompletableFuture<Void> snapshotsListened;
+
+    public PgBackend(EventLogStorage eventLogs, SnapshotRepository snapshots,
+            ClusterNodeRepository clusterNodes, DataSource dataSource,
+            DataSourceProperties props, PgBackendProperties properties,
+            EventLogTable eventLogTable, MeterRegistry meterRegistry) {
         this.eventLogs = eventLogs;
         this.snapshots = snapshots;
+        this.clusterNodes = clusterNodes;
+        this.properties = properties;
+        perLogSequence = properties
+                .getSequenceMode() == PgBackendProperties.SequenceMode.PER_LOG;
+        deliverySettings = properties.getDelivery();
+        metrics = new BackendMetrics(meterRegistry);
+        tracer = new EventTracer(meterRegistry, properties.getTracing());
+        tailCache = new EventTailCache(
+                properties.getTailCache().getMaxEntries(),
+                properties.getTailCache().getMaxBytes());
+        snapshotCache = new SnapshotCache(
+                properties.getSnapshotCache().getMaxBytes());
+        databaseExecutor = new DatabaseExecutor(properties.getAsync());
+        payloadCodec = new PayloadCodec(properties.getPayloadStorage());
+        compactor = new EventLogCompactor(eventLogs, tailCache,
+                properties.getCompaction());
+        notifyListener = new PgNotifyListener(() -> openPgConnection(props),
+                (channel, payload) -> eventLogs.notify(channel,
+                        payload != null ? payload : ""),
+                this::reconnected, properties.getListener());
+        // Anything cached before listening might already be outdated
+        snapshotsListened = notifyListener
+                .listen(SnapshotCache.CHANNEL,
+                        snapshotCache::handleNotification)
+                .whenRegistered().thenRun(snapshotCache::clear);
+        channels = new LogChannels(notifyListener,
+                properties.getListener().getSharedChannels());
+        submitter = new EventSubmitter(dataSource, properties.getSubmit(),
+                properties.isInlinePayloads(), properties.getSequenceMode(),
+                eventLogTable.isPartitioned(), channels, payloadCodec, metrics,
+                tracer);
+        registerGauges();
+    }
+
+    /**
+     * Joins the cluster once this backend has been constructed, since
+     * membership events are fired through its collaboration engine.
+     */
+    @PostConstruct
+    void joinCluster() {
+        membership = new ClusterMembership(nodeId, clusterNodes,
+                notifyListener, this::getCollaborationEngine,
+                properties.getMembership());
+        metrics.gauge("pg.backend.cluster.members",
+                "Number of other nodes that are currently members",
+                membership, members -> members.getMembers().size());
+    }
 
-        PgConnection pgConnection = openPgConnection(props);
-        notifyListener = new PgNotifyListener(pgConnection,
-                (channel, payload) -> eventLogs.notify(channel));
+    private void registerGauges() {
+        metrics.gauge("pg.backend.logs",
+                "Number of logs with local subscriptions", logs, Map::size);
+        metrics.gauge("pg.backend.listener.channels",
+                "Number of channels listened to", notifyListener,
+                PgNotifyListener::getListenedChannelCount);
+        metrics.gauge("pg.backend.listener.pending.updates",
+                "Number of LISTEN and UNLISTEN commands waiting to run",
+                notifyListener, PgNotifyListener::getPendingUpdateCount);
+        metrics.gauge("pg.backend.listener.connected",
+                "Whether the notification listener is connected",
+                notifyListener,
+                listener -> listener.getStats().connected() ? 1 : 0);
+        metrics.counter("pg.backend.listener.reconnects",
+                "Number of times the notification listener has reconnected",
+                notifyListener, listener -> listener.getStats().reconnects());
+        metrics.timeGauge("pg.backend.listener.outage",
+                "Total time the notification listener has been without a working connection, including any ongoing outage",
+                notifyListener, TimeUnit.MILLISECONDS,
+                listener -> listener.getStats().totalOutage().toMillis());
+        metrics.gauge("pg.backend.tail.cache.entries",
+                "Number of events in the tail cache", tailCache,
+                cache -> cache.getStats().entries());
+        metrics.gauge("pg.backend.tail.cache.bytes",
+                "Approximate size of the events in the tail cache", tailCache,
+                cache -> cache.getStats().bytes());
+        metrics.counter("pg.backend.tail.cache.hits",
+                "Catch-ups served from the tail cache", tailCache,
+                cache -> cache.getStats().hits());
+        metrics.counter("pg.backend.tail.cache.misses",
+                "Catch-ups that had to query the database", tailCache,
+                cache -> cache.getStats().misses());
+        metrics.gauge("pg.backend.snapshot.cache.entries",
+                "Number of logs in the snapshot cache", snapshotCache,
+                cache -> cache.getStats().entries());
+        metrics.gauge("pg.backend.snapshot.cache.bytes",
+                "Approximate size of the snapshots in the snapshot cache",
+                snapshotCache, cache -> cache.getStats().bytes());
+    }
+
+    /**
+     * Drops cached snapshots and catches up all subscriptions from the
+     * database since notifications may have been missed while the listener
+     * was disconnected.
+     */
+    private void reconnected() {
+        snapshotCache.clear();
+        for (LogSubscriptions logSubscriptions : logs.values()) {
+            tailCache.markStale(logSubscriptions.logId);
+            logSubscriptions.requestCatchUp();
+        }
     }
 
     private static PgConnection openPgConnection(DataSourceProperties props) {
@@ -149,9 +1149,131 @@ public class PgBackend extends Backend {
         }
     }
 
+    /**
+     * Looks up the sequence id of an event through the database executor.
+     * Waits for the result since {@link EventLog#subscribe} must report a
+     * missing event synchronously, but still applies the concurrency limit
+     * and gives up after the shorter call timeout. The caller is blocked
+     * meanwhile, which may be a UI
+     * thread: Collaboration Engine subscribes from the completion of
+     * {@link #loadLatestSnapshot(String)}, and that future is already
+     * complete when the snapshot is cached. The tail cache and the resume
+     * points of ended subscriptions avoid the lookup in the common cases.
+     */
+    private Optional<Long> findSequenceId(String logId, UUID eventId) {
+        try {
+            return databaseExecutor.call(
+                    () -> eventLogs.getSequenceIdByEventId(logId, eventId));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Timed out looking up event " + eventId
+                    + " in " + logId, e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Preloads the caches before the application reports that it's ready to
+     * accept traffic, so that the users of a restarted node don't all load
+     * their topics from the database at once. Logs whose snapshot has been
+     * replaced within the activity window count as active, and their
+     * snapshots and latest events are loaded with one query each.
+     */
+    @EventListener({ ApplicationStartedEvent.class })
+    public void onApplicationEvent(ApplicationStartedEvent event) {
+        PgBackendProperties.Warmup settings = properties.getWarmup();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            // Snapshots are only cached once announcements are received
+            snapshotsListened.get(WARMUP_TIMEOUT.toMillis(),
+                    TimeUnit.MILLISECONDS);
+            long epoch = snapshotCache.getEpoch();
+            List<SnapshotEntity> active = snapshots
+                    .findByUpdatedAtAfterOrderByUpdatedAtDesc(
+                            Instant.now().minus(settings.getActivityWindow()),
+                            Limit.of(settings.getMaxLogs()));
+            List<String> logIds = new ArrayList<>();
+            for (SnapshotEntity snapshot : active) {
+                snapshotCache.preload(snapshot.getLogId(),
+                        snapshot.asSnapshot(), epoch);
+                logIds.add(snapshot.getLogId());
+            }
+            int events = logIds.isEmpty() ? 0
+                    : preloadTails(logIds, settings.getEventsPerLog());
+            logger.info("Preloaded {} snapshots and {} events in {} ms",
+                    Integer.valueOf(logIds.size()), Integer.valueOf(events),
+                    Long.valueOf(TimeUnit.NANOSECONDS
+                            .toMillis(System.nanoTime() - start)));
+        } catch (TimeoutException e) {
+            logger.warn(
+                    "Skipping the warmup since the notification listener didn't connect within {}",
+                    WARMUP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            // The caches are filled on demand anyway
+            logger.warn("Failed to preload the caches", e);
+        }
+    }
+
+    /**
+     * Reads one more event than preloaded for each log to tell whether the
+     * events cover the whole log or start after some older event.
+     *
+     * @return the number of preloaded events
+     */
+    private int preloadTails(List<String> logIds, int eventsPerLog) {
+        List<EventLogEntry> events = eventLogs.findLatestOfLogs(logIds,
+                eventsPerLog + 1);
+        int start = 0;
+        int count = 0;
+        while (start < events.size()) {
+            String logId = events.get(start).getLogId();
+            int end = start + 1;
+            while (end < events.size()
+                    && events.get(end).getLogId().equals(logId)) {
+                end++;
+            }
+
+            List<EventLogEntry> tail = events.subList(start, end);
+            long from = -1;
+            if (tail.size() > eventsPerLog) {
+                from = tail.get(0).getId();
+                tail = tail.subList(1, tail.size());
+            }
+            tailCache.recordPreload(logId, from, tail);
+            count += tail.size();
+            start = end;
+        }
+        return count;
+    }
+
     @EventListener({ ContextClosedEvent.class })
     public void onApplicationEvent(ContextClosedEvent event) {
+        submitter.close();
+        membership.close();
         notifyListener.close();
+        dispatcher.shutdown();
+        deliveryExecutor.shutdown();
+        compactor.close();
+        databaseExecutor.close();
+    }
+
+    public EventTailCache.Stats getTailCacheStats() {
+        return tailCache.getStats();
+    }
+
+    public SnapshotCache.Stats getSnapshotCacheStats() {
+        return snapshotCache.getStats();
+    }
+
+    public PgNotifyListener.Stats getListenerStats() {
+        return notifyListener.getStats();
     }
 
     @Override
@@ -164,10 +1286,7 @@ public class PgBackend extends Backend {
     @Override
     public Registration addMembershipListener(
             MembershipListener membershipListener) {
-        System.out.println(
-                "Member ship listeners are left as an exersice for the reader");
-        return () -> {
-        };
+        return membership.addListener(membershipListener);
     }
 
     @Override
@@ -177,19 +1296,67 @@ public class PgBackend extends Backend {
 
     @Override
     public CompletableFuture<Snapshot> loadLatestSnapshot(String name) {
-        Snapshot snapshot = snapshots.findById(name)
-                .map(SnapshotEntity::asSnapshot).orElse(null);
-        return CompletableFuture.completedFuture(snapshot);
+        long start = System.nanoTime();
+        Optional<Snapshot> cached = snapshotCache.get(name);
+        if (cached.isPresent()) {
+            metrics.snapshotLoaded(true, start);
+            return CompletableFuture.completedFuture(cached.get());
+        }
+
+        return databaseExecutor.submit(() -> {
+            long generation = snapshotCache.getGeneration(name);
+            Snapshot snapshot = snapshots.findById(name)
+                    .map(SnapshotEntity::asSnapshot).orElse(null);
+            if (snapshot != null) {
+                snapshotCache.put(name, snapshot, generation);
+            }
+            metrics.snapshotLoaded(false, start);
+            return snapshot;
+        });
     }
 
     @Override
     public CompletableFuture<Void> replaceSnapshot(String name, UUID expectedId,
             UUID newId, String payload) {
-        if (expectedId == null) {
-            snapshots.insert(name, newId, payload);
-        } else {
-            snapshots.update(name, expectedId, newId, payload);
+        return tryReplaceSnapshot(name, expectedId, newId, payload)
+                .thenApply(replaced -> null);
+    }
+
+    /**
+     * Replaces the latest snapshot of a log if the current snapshot has the
+     * expected id. The write is skipped without contacting the database if
+     * another node is already known to have replaced the expected snapshot.
+     *
+     * @return a future that is completed with <code>true</code> if the
+     *         snapshot was replaced or <code>false</code> if some other
+     *         snapshot is current
+     */
+    public CompletableFuture<Boolean> tryReplaceSnapshot(String name,
+            UUID expectedId, UUID newId, String payload) {
+        long start = System.nanoTime();
+        Optional<UUID> currentId = snapshotCache.getCurrentId(name);
+        if (currentId.isPresent() && !currentId.get().equals(expectedId)) {
+            metrics.snapshotReplaceSkipped(start);
+            return CompletableFuture.completedFuture(Boolean.FALSE);
         }
-        return CompletableFuture.completedFuture(null);
+
+        return databaseExecutor.submit(() -> {
+            long generation = snapshotCache.getGeneration(name);
+            PayloadCodec.Stored stored = payloadCodec.store(payload);
+            boolean replaced = snapshots.replace(name, expectedId, newId,
+                    stored.text(), stored.data(), SnapshotCache.CHANNEL,
+                    SnapshotCache.encode(name, newId));
+
+            if (replaced) {
+                snapshotCache.written(name, new Snapshot(newId, payload),
+                        generation);
+            } else {
+                // Lost to another node, whose announcement may not have
+                // arrived yet
+                snapshotCache.invalidate(name);
+            }
+            metrics.snapshotReplaceAttempted(replaced, start);
+            return Boolean.valueOf(replaced);
+        });
     }
 }
@@ -0,0 +1,660 @@
+package com.example.application;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("pg-backend")
+public class PgBackendProperties {
+    public static class TailCache {
+        /**
+         * Maximum number of events to keep in memory across all logs.
+         */
+        private int maxEntries = 10_000;
+
+        /**
+         * Approximate maximum number of bytes used by cached events across
+         * all logs.
+         */
+        private long maxBytes = 16 * 1024 * 1024;
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    public static class SnapshotCache {
+        /**
+         * Approximate maximum number of bytes used by cached snapshots.
+         */
+        private long maxBytes = 16 * 1024 * 1024;
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    public static class PayloadStorage {
+        public enum Format {
+            TEXT, BINARY
+        }
+
+        /**
+         * Column format for newly written event and snapshot payloads.
+         * Existing rows are read in either format.
+         */
+        private Format format = Format.TEXT;
+
+        /**
+         * Smallest payload size in bytes to compress in the binary format.
+         */
+        private int compressionThreshold = 512;
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public void setFormat(Format format) {
+            this.format = format;
+        }
+
+        public int getCompressionThreshold() {
+            return compressionThreshold;
+        }
+
+        public void setCompressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+        }
+    }
+
+    public static class Submit {
+        /**
+         * How long to wait for more events before writing a batch.
+         */
+        private Duration batchWindow = Duration.ofMillis(2);
+
+        /**
+         * Maximum number of events to write in a single transaction.
+         */
+        private int maxBatchSize = 500;
+
+        /**
+         * How many times to retry writing a batch that failed with a
+         * transient error before failing its events.
+         */
+        private int maxRetries = 3;
+
+        /**
+         * How long to wait before the first retry of a failed batch. The wait
+         * is doubled for each following retry.
+         */
+        private Duration retryBackoff = Duration.ofMillis(50);
+
+
+        public Duration getBatchWindow() {
+            return batchWindow;
+        }
+
+        public void setBatchWindow(Duration batchWindow) {
+            this.batchWindow = batchWindow;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+    }
+
+    public static class Compaction {
+        /**
+         * Maximum number of events to delete in a single transaction.
+         */
+        private int batchSize = 1000;
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    public static class Partitioning {
+        /**
+         * Whether to create the event table partitioned by a hash of the log
+         * id, which only applies when the table doesn't exist yet. Any
+         * benefit over a plain table at production scale is unmeasured.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of hash partitions to create.
+         */
+        private int hashPartitions = 16;
+
+        /**
+         * Time range covered by each sub-partition of a hash partition, or 0
+         * to not sub-partition by time. Only useful together with a
+         * retention, since reads can't skip any time partitions.
+         */
+        private Duration timeInterval = Duration.ZERO;
+
+        /**
+         * How long to keep events before dropping the time partitions that
+         * contain them, or 0 to keep all events. Partitions with events that
+         * their log hasn't been truncated past yet are kept longer.
+         */
+        private Duration retention = Duration.ZERO;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getHashPartitions() {
+            return hashPartitions;
+        }
+
+        public void setHashPartitions(int hashPartitions) {
+            this.hashPartitions = hashPartitions;
+        }
+
+        public Duration getTimeInterval() {
+            return timeInterval;
+        }
+
+        public void setTimeInterval(Duration timeInterval) {
+            this.timeInterval = timeInterval;
+        }
+
+        public Duration getRetention() {
+            return retention;
+        }
+
+        public void setRetention(Duration retention) {
+            this.retention = retention;
+        }
+    }
+
+    public static class Listener {
+        /**
+         * Number of channels to share between all logs, or 0 to listen to a
+         * separate channel for each log that has subscribers.
+         */
+        private int sharedChannels = 0;
+
+        /**
+         * How long to keep collecting notifications after the first one of a
+         * burst, so that each log is woken up and queried once per burst.
+         * Adds up to this much latency, 0 only batches notifications received
+         * in the same read.
+         */
+        private Duration coalesceWindow = Duration.ZERO;
+
+        public int getSharedChannels() {
+            return sharedChannels;
+        }
+
+        public void setSharedChannels(int sharedChannels) {
+            this.sharedChannels = sharedChannels;
+        }
+
+        public Duration getCoalesceWindow() {
+            return coalesceWindow;
+        }
+
+        public void setCoalesceWindow(Duration coalesceWindow) {
+            this.coalesceWindow = coalesceWindow;
+        }
+    }
+
+    public static class Membership {
+        /**
+         * How often each node renews its lease and checks for nodes whose
+         * lease has expired.
+         */
+        private Duration heartbeatInterval = Duration.ofSeconds(5);
+
+        /**
+         * How long a node remains a member after its latest heartbeat. Nodes
+         * that crash are reported as having left within the lease duration
+         * plus one heartbeat interval.
+         */
+        private Duration leaseDuration = Duration.ofSeconds(15);
+
+        public Duration getHeartbeatInterval() {
+            return heartbeatInterval;
+        }
+
+        public void setHeartbeatInterval(Duration heartbeatInterval) {
+            this.heartbeatInterval = heartbeatInterval;
+        }
+
+        public Duration getLeaseDuration() {
+            return leaseDuration;
+        }
+
+        public void setLeaseDuration(Duration leaseDuration) {
+            this.leaseDuration = leaseDuration;
+        }
+    }
+
+    public static class GapTracking {
+        /**
+         * How long a transaction on another node may take to commit and
+         * still have its events delivered to subscriptions that have already
+         * received events with higher sequence ids.
+         */
+        private Duration timeout = Duration.ofSeconds(30);
+
+        /**
+         * Maximum number of skipped sequence id ranges to remember for each
+         * log, or 0 to not deliver events that commit out of order.
+         */
+        private int maxGaps = 1000;
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public int getMaxGaps() {
+            return maxGaps;
+        }
+
+        public void setMaxGaps(int maxGaps) {
+            this.maxGaps = maxGaps;
+        }
+    }
+
+    public static class Tracing {
+        /**
+         * Whether to stamp notifications with the submit time of their events
+         * and record the latency of each stage until delivery.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Fraction of traced notifications to also log with the latency of
+         * each stage when delivered to a subscriber, between 0 and 1.
+         */
+        private double logSampleRate = 0;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getLogSampleRate() {
+            return logSampleRate;
+        }
+
+        public void setLogSampleRate(double logSampleRate) {
+            this.logSampleRate = logSampleRate;
+        }
+    }
+
+    public static class Async {
+        /**
+         * Maximum number of database operations to run concurrently on behalf
+         * of backend callers.
+         */
+        private int maxConcurrency = 16;
+
+        /**
+         * Maximum number of operations that may wait for their turn before
+         * new ones are rejected.
+         */
+        private int maxQueued = 1000;
+
+        /**
+         * How long to wait for an operation before failing it.
+         */
+        private Duration timeout = Duration.ofSeconds(10);
+
+        /**
+         * How long a caller that blocks on an operation, such as subscribing
+         * from an event id, waits before failing.
+         */
+        private Duration callTimeout = Duration.ofSeconds(2);
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public void setMaxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public Duration getCallTimeout() {
+            return callTimeout;
+        }
+
+        public void setCallTimeout(Duration callTimeout) {
+            this.callTimeout = callTimeout;
+        }
+    }
+
+    public static class Delivery {
+        public enum OverflowPolicy {
+            /**
+             * Discard the queued events and read everything after the last
+             * delivered event again once the consumer has caught up.
+             */
+            COALESCE,
+            /**
+             * Discard the queued events, stop listening on behalf of the
+             * subscription and subscribe it again from the last delivered
+             * event once the consumer has caught up.
+             */
+            RESUBSCRIBE,
+            /**
+             * Discard the queued events and end the subscription. The next
+             * subscribe or submit for the log on this node then fails with
+             * the last event the subscriber got.
+             */
+            DISCONNECT
+        }
+
+        /**
+         * Maximum number of events waiting to be passed to the consumer of a
+         * single subscription.
+         */
+        private int maxQueued = 1000;
+
+        /**
+         * What to do when the queue of a subscription is full.
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.COALESCE;
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public void setMaxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+    }
+
+    public static class Warmup {
+        /**
+         * Whether to preload the caches with the snapshots and latest events
+         * of recently active logs before reporting that the node is ready.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Logs whose snapshot has been replaced within this long are
+         * considered active.
+         */
+        private Duration activityWindow = Duration.ofHours(1);
+
+        /**
+         * Maximum number of logs to preload, most recently active first.
+         */
+        private int maxLogs = 1000;
+
+        /**
+         * Maximum number of the latest events to preload for each log.
+         */
+        private int eventsPerLog = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getActivityWindow() {
+            return activityWindow;
+        }
+
+        public void setActivityWindow(Duration activityWindow) {
+            this.activityWindow = activityWindow;
+        }
+
+        public int getMaxLogs() {
+            return maxLogs;
+        }
+
+        public void setMaxLogs(int maxLogs) {
+            this.maxLogs = maxLogs;
+        }
+
+        public int getEventsPerLog() {
+            return eventsPerLog;
+        }
+
+        public void setEventsPerLog(int eventsPerLog) {
+            this.eventsPerLog = eventsPerLog;
+        }
+    }
+
+    public enum SequenceMode {
+        /**
+         * Event ids come from one sequence shared by all logs.
+         */
+        GLOBAL,
+        /**
+         * Each log numbers its events from 1 without gaps, in the order they
+         * are committed.
+         */
+        PER_LOG
+    }
+
+    public enum Storage {
+        /**
+         * Spring Data JPA native queries.
+         */
+        JPA,
+        /**
+         * Prepared statements through a <code>JdbcTemplate</code>.
+         */
+        JDBC
+    }
+
+    /**
+     * How events are read, deleted and notified about. Events are always
+     * written by {@link EventSubmitter} with plain JDBC regardless of this.
+     */
+    private Storage storage = Storage.JPA;
+
+    /**
+     * How sequence ids are assigned to events. Can't be changed once the
+     * event table has been created.
+     */
+    private SequenceMode sequenceMode = SequenceMode.GLOBAL;
+
+    /**
+     * Whether submitted events are delivered inside the NOTIFY payload when
+     * they fit, so that subscribers don't need to query for them.
+     */
+    private boolean inlinePayloads = true;
+
+    /**
+     * Maximum number of events to read from the database at a time when
+     * catching up.
+     */
+    private int catchUpPageSize = 500;
+
+    private final Submit submit = new Submit();
+
+    private final PayloadStorage payloadStorage = new PayloadStorage();
+
+    private final TailCache tailCache = new TailCache();
+
+    private final SnapshotCache snapshotCache = new SnapshotCache();
+
+    private final Compaction compaction = new Compaction();
+
+    private final Partitioning partitioning = new Partitioning();
+
+    private final Listener listener = new Listener();
+
+    private final Membership membership = new Membership();
+
+    private final GapTracking gapTracking = new GapTracking();
+
+    private final Tracing tracing = new Tracing();
+
+    private final Async async = new Async();
+
+    private final Delivery delivery = new Delivery();
+
+    private final Warmup warmup = new Warmup();
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public void setStorage(Storage storage) {
+        this.storage = storage;
+    }
+
+    public SequenceMode getSequenceMode() {
+        return sequenceMode;
+    }
+
+    public void setSequenceMode(SequenceMode sequenceMode) {
+        this.sequenceMode = sequenceMode;
+    }
+
+    public boolean isInlinePayloads() {
+        return inlinePayloads;
+    }
+
+    public void setInlinePayloads(boolean inlinePayloads) {
+        this.inlinePayloads = inlinePayloads;
+    }
+
+    public int getCatchUpPageSize() {
+        return catchUpPageSize;
+    }
+
+    public void setCatchUpPageSize(int catchUpPageSize) {
+        this.catchUpPageSize = catchUpPageSize;
+    }
+
+    public Submit getSubmit() {
+        return submit;
+    }
+
+    public PayloadStorage getPayloadStorage() {
+        return payloadStorage;
+    }
+
+    public TailCache getTailCache() {
+        return tailCache;
+    }
+
+    public SnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+
+    public Compaction getCompaction() {
+        return compaction;
+    }
+
+    public Partitioning getPartitioning() {
+        return partitioning;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    public Membership getMembership() {
+        return membership;
+    }
+
+    public GapTracking getGapTracking() {
+        return gapTracking;
+    }
+
+    public Tracing getTracing() {
+        return tracing;
+    }
+
+    public Async getAsync() {
+        return async;
+    }
+
+    public Delivery getDelivery() {
+        return delivery;
+    }
+
+    public Warmup getWarmup() {
+        return warmup;
+    }
+}
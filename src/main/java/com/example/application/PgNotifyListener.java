@@ -2,8 +2,12 @@ package com.example.application;
 
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -11,13 +15,18 @@ import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.postgresql.PGNotification;
 import org.postgresql.jdbc.PgConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.vaadin.flow.shared.Registration;
 
@@ -26,29 +35,51 @@ public class PgNotifyListener implements AutoCloseable {
             Registration unregister) {
     }
 
+    /**
+     * Statistics about the health of the listener connection.
+     *
+     * @param reconnects
+     *            the number of times the connection has been re-established
+     *            after being lost
+     * @param totalOutage
+     *            the total time without a working connection, including any
+     *            ongoing outage
+     * @param connected
+     *            whether there is currently a working connection
+     */
+    public record Stats(long reconnects, Duration totalOutage,
+            boolean connected) {
+    }
+
+    @FunctionalInterface
+    private interface Update {
+        void run(PgConnection connection) throws SQLException;
+    }
+
     private class Channel {
         private CompletableFuture<Void> registrationListener;
 
         private final String name;
 
         private final ReentrantLock lock = new ReentrantLock();
-        private final Set<Consumer<String>> listeners = new HashSet<>();
+        private final Set<Consumer<List<String>>> listeners = new HashSet<>();
 
         public Channel(String name) {
             this.name = name;
         }
 
-        public ListenResult addListener(Consumer<String> listener) {
+        public ListenResult addListener(Consumer<List<String>> listener) {
             try {
                 lock.lock();
                 listeners.add(listener);
 
                 if (registrationListener == null) {
-                    registrationListener = new CompletableFuture<Void>();
+                    CompletableFuture<Void> future = new CompletableFuture<>();
+                    registrationListener = future;
 
-                    scheduleUpdate(() -> {
-                        runUpdate("LISTEN", name);
-                        registrationListener.complete(null);
+                    scheduleUpdate(connection -> {
+                        runUpdate(connection, "LISTEN", name);
+                        future.complete(null);
                     });
                 }
 
@@ -59,14 +90,14 @@ public class PgNotifyListener implements AutoCloseable {
             }
         }
 
-        private void removeListener(Consumer<String> listener) {
+        private void removeListener(Consumer<List<String>> listener) {
             try {
                 lock.lock();
 
                 if (listeners.remove(listener) && listeners.isEmpty()) {
                     registrationListener = null;
-                    scheduleUpdate(() -> {
-                        runUpdate("UNLISTEN ", name);
+                    scheduleUpdate(connection -> {
+                        runUpdate(connection, "UNLISTEN", name);
                     });
                 }
             } finally {
@@ -74,11 +105,39 @@ public class PgNotifyListener implements AutoCloseable {
             }
         }
 
-        public void notifyListeners(String payload) {
-            copyListeners().forEach(listener -> listener.accept(payload));
+        /**
+         * Re-issues LISTEN on a new connection if there are listeners.
+         */
+        private void relisten(PgConnection connection) throws SQLException {
+            CompletableFuture<Void> future;
+            try {
+                lock.lock();
+                if (listeners.isEmpty()) {
+                    return;
+                }
+                future = registrationListener;
+            } finally {
+                lock.unlock();
+            }
+
+            runUpdate(connection, "LISTEN", name);
+            future.complete(null);
         }
 
-        private Collection<Consumer<String>> copyListeners() {
+        public void notifyListeners(List<String> payloads) {
+            copyListeners().forEach(listener -> listener.accept(payloads));
+        }
+
+        private boolean hasListeners() {
+            try {
+                lock.lock();
+                return !listeners.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Collection<Consumer<List<String>>> copyListeners() {
             try {
                 lock.lock();
                 return new HashSet<>(listeners);
@@ -88,73 +147,228 @@ public class PgNotifyListener implements AutoCloseable {
         }
     }
 
+    private static final Logger logger = LoggerFactory
+            .getLogger(PgNotifyListener.class);
+
+    private static final Duration MIN_RECONNECT_DELAY = Duration
+            .ofMillis(100);
+
+    private static final Duration MAX_RECONNECT_DELAY = Duration
+            .ofSeconds(30);
+
+    // How long the connection may be idle before checking that it still works
+    private static final int HEALTH_CHECK_MILLIS = 10_000;
+
     private final String internalNotifyId = UUID.randomUUID().toString();
 
     @SuppressWarnings("unused")
     // Just hold a reference to prevent it from being GC'ed
     private final Thread pollerThread;
+    private final Supplier<PgConnection> connectionFactory;
     private final BiConsumer<String, String> notifier;
-    private final PgConnection connection;
+    private final Runnable reconnectListener;
+    private final PgBackendProperties.Listener settings;
 
     private final Map<String, Channel> channels = new ConcurrentHashMap<>();
-    private final Queue<Runnable> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private final Queue<Update> pendingUpdates = new ConcurrentLinkedQueue<>();
     private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
 
-    public PgNotifyListener(PgConnection connection,
-            BiConsumer<String, String> notifier) {
-        this.connection = connection;
+    private volatile PgConnection connection;
+
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong completedOutageNanos = new AtomicLong();
+    private volatile long outageStartNanos;
+
+    /**
+     * Creates a new listener that keeps a dedicated connection open for
+     * receiving notifications.
+     *
+     * @param connectionFactory
+     *            opens a new connection to listen on, used initially and
+     *            whenever the previous connection is lost
+     * @param notifier
+     *            sends a notification through some other connection
+     * @param reconnectListener
+     *            run on the poller thread after reconnecting and listening
+     *            again to all channels, to recover any notifications that
+     *            were missed while disconnected
+     */
+    public PgNotifyListener(Supplier<PgConnection> connectionFactory,
+            BiConsumer<String, String> notifier, Runnable reconnectListener,
+            PgBackendProperties.Listener settings) {
+        this.connectionFactory = connectionFactory;
         this.notifier = notifier;
+        this.reconnectListener = reconnectListener;
+        this.settings = settings;
+
+        outageStartNanos = System.nanoTime();
+        pollerThread = Thread.startVirtualThread(this::run);
+    }
+
+    private void run() {
+        Duration reconnectDelay = MIN_RECONNECT_DELAY;
+        boolean everConnected = false;
+        while (!shuttingDown.get()) {
+            try {
+                connect();
+                if (everConnected) {
+                    reconnects.incrementAndGet();
+                    reconnectListener.run();
+                }
+                everConnected = true;
+                reconnectDelay = MIN_RECONNECT_DELAY;
+
+                poll();
+            } catch (SQLException | RuntimeException e) {
+                if (shuttingDown.get()) {
+                    break;
+                }
+                disconnected();
+                logger.warn("Lost notification listener connection, "
+                        + "reconnecting in " + reconnectDelay, e);
+
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                reconnectDelay = min(reconnectDelay.multipliedBy(2),
+                        MAX_RECONNECT_DELAY);
+            }
+        }
+        closeConnection();
+    }
+
+    private void connect() throws SQLException {
+        PgConnection newConnection = connectionFactory.get();
+        connection = newConnection;
 
         // Make it possible to interrupt the poller thread when it should run
         // updates against its JDBC connection
-        runUpdate("LISTEN", internalNotifyId);
+        runUpdate(newConnection, "LISTEN", internalNotifyId);
+
+        for (Channel channel : channels.values()) {
+            channel.relisten(newConnection);
+        }
+
+        completedOutageNanos.addAndGet(System.nanoTime() - outageStartNanos);
+        outageStartNanos = 0;
+    }
+
+    private void poll() throws SQLException {
+        PgConnection connection = this.connection;
+        while (true) {
+            PGNotification[] notifications = connection
+                    .getNotifications(HEALTH_CHECK_MILLIS);
+
+            Update action;
+            while ((action = pendingUpdates.poll()) != null) {
+                action.run(connection);
+            }
+
+            if (shuttingDown.get()) {
+                return;
+            }
+
+            if (notifications.length == 0
+                    && !connection.isValid(HEALTH_CHECK_MILLIS / 1000 + 1)) {
+                throw new SQLException("Listener connection is not valid");
+            }
+
+            Map<Channel, List<String>> batch = new LinkedHashMap<>();
+            collect(notifications, batch);
+            if (!batch.isEmpty()) {
+                collectWithinWindow(connection, batch);
+            }
+            batch.forEach(Channel::notifyListeners);
+        }
+    }
+
+    /**
+     * Keeps collecting notifications until the coalescing window has passed
+     * since the first one, so that a burst that arrives over several reads is
+     * passed on as one batch that the listener can handle at once.
+     */
+    private void collectWithinWindow(PgConnection connection,
+            Map<Channel, List<String>> batch) throws SQLException {
+        long windowNanos = settings.getCoalesceWindow().toNanos();
+        long deadline = System.nanoTime() + windowNanos;
+        long remaining = windowNanos;
+        while (remaining > 0 && !shuttingDown.get()) {
+            // A timeout of 0 would block until the next notification
+            int timeoutMillis = (int) Math.max(1,
+                    TimeUnit.NANOSECONDS.toMillis(remaining));
+            collect(connection.getNotifications(timeoutMillis), batch);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Groups notifications by channel, keeping the order in which they were
+     * sent on each channel.
+     */
+    private void collect(PGNotification[] notifications,
+            Map<Channel, List<String>> batch) {
+        for (PGNotification notification : notifications) {
+            Channel channel = channels.get(notification.getName());
+            if (channel == null) {
+                continue;
+            }
+            batch.computeIfAbsent(channel, x -> new ArrayList<>())
+                    .add(notification.getParameter());
+        }
+    }
 
-        pollerThread = Thread.startVirtualThread(() -> {
+    private void disconnected() {
+        if (outageStartNanos == 0) {
+            outageStartNanos = System.nanoTime();
+        }
+        closeConnection();
+    }
+
+    private void closeConnection() {
+        PgConnection connection = this.connection;
+        this.connection = null;
+        if (connection != null) {
             try {
-                while (true) {
-                    PGNotification[] notifications = connection
-                            .getNotifications(0);
-                    
-                    Runnable action;
-                    while ((action = pendingUpdates.poll()) != null) {
-                        action.run();
-                    }
-
-                    if (shuttingDown.get()) {
-                        return;
-                    }
-
-                    for (PGNotification notification : notifications) {
-                        Channel channel = channels.get(notification.getName());
-                        if (channel != null) {
-                            channel.notifyListeners(
-                                    notification.getParameter());
-                        }
-                    }
-                }
+                connection.close();
             } catch (SQLException e) {
-                throw new RuntimeException(e);
+                // Already broken
             }
-        });
+        }
     }
 
-    private void scheduleUpdate(Runnable command) {
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private void scheduleUpdate(Update command) {
         pendingUpdates.add(command);
         notify(internalNotifyId);
     }
 
     public ListenResult listen(String channelName, Consumer<String> listener) {
+        return listenToBatches(channelName,
+                payloads -> payloads.forEach(listener));
+    }
+
+    /**
+     * Listens to a channel with a listener that receives all notifications
+     * that arrived on the channel in one read, or within the coalescing
+     * window, at once and in the order they were sent.
+     */
+    public ListenResult listenToBatches(String channelName,
+            Consumer<List<String>> listener) {
         return channels.computeIfAbsent(channelName, Channel::new)
                 .addListener(listener);
     }
 
-    private void runUpdate(String command, String channel) {
+    private static void runUpdate(PgConnection connection, String command,
+            String channel) throws SQLException {
         try (Statement statement = connection.createStatement()) {
             // LISTEN and UNLISTEN doesn't support prepared statements
             statement.execute(
                     command + " " + connection.escapeIdentifier(channel));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
         }
     }
 
@@ -166,17 +380,41 @@ public class PgNotifyListener implements AutoCloseable {
         notifier.accept(channel, payload);
     }
 
+    /**
+     * Gets the number of channels that currently have listeners.
+     */
+    public int getListenedChannelCount() {
+        int count = 0;
+        for (Channel channel : channels.values()) {
+            if (channel.hasListeners()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of LISTEN and UNLISTEN commands waiting for the poller
+     * thread.
+     */
+    public int getPendingUpdateCount() {
+        return pendingUpdates.size();
+    }
+
+    public Stats getStats() {
+        long outageStart = outageStartNanos;
+        long outage = completedOutageNanos.get();
+        if (outageStart != 0) {
+            outage += System.nanoTime() - outageStart;
+        }
+        return new Stats(reconnects.get(), Duration.ofNanos(outage),
+                outageStart == 0);
+    }
+
     @Override
     public void close() {
         if (shuttingDown.getAndSet(true) == false) {
             pendingUpdates.clear();
-            pendingUpdates.add(() -> {
-                try {
-                    connection.close();
-                } catch (SQLException e) {
-                    throw new RuntimeException(e);
-                }
-            });
             notify(internalNotifyId);
         }
     }
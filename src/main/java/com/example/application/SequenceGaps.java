@@ -0,0 +1,112 @@
+package com.example.application;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Ranges of sequence ids that the events delivered for a log have skipped
+ * over. Ids come from a sequence shared by all logs and are assigned before
+ * the transaction commits, so a skipped id is either used by another log or
+ * by a transaction on another node that has not yet committed. Since there's
+ * no way of telling these apart, every skipped range is remembered until it
+ * is either filled by an event that commits late, or it expires because no
+ * transaction stays open that long. Only the ranges with the highest ids are
+ * kept if there are too many.
+ * <p>
+ * Not thread safe, access is guarded by the lock of the owning log.
+ */
+public class SequenceGaps {
+    /**
+     * Ids between the key (exclusive) and <code>before</code> (exclusive)
+     * have been skipped.
+     */
+    private record Gap(long before, long expires) {
+    }
+
+    private final NavigableMap<Long, Gap> gaps = new TreeMap<>();
+
+    private final long timeoutNanos;
+    private final int maxGaps;
+
+    public SequenceGaps(PgBackendProperties.GapTracking settings) {
+        timeoutNanos = settings.getTimeout().toNanos();
+        maxGaps = settings.getMaxGaps();
+    }
+
+    /**
+     * Records that ids between the given ids, exclusive, have been skipped.
+     */
+    public void skipped(long after, long before) {
+        if (before - after < 2 || maxGaps <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        gaps.put(Long.valueOf(after), new Gap(before, now + timeoutNanos));
+
+        while (gaps.size() > maxGaps) {
+            gaps.pollFirstEntry();
+        }
+        // Gaps are mostly added in id order, so expired gaps are at the head
+        Map.Entry<Long, Gap> first;
+        while ((first = gaps.firstEntry()) != null
+                && first.getValue().expires() - now < 0) {
+            gaps.pollFirstEntry();
+        }
+    }
+
+    /**
+     * Checks whether the given id is in a skipped range.
+     */
+    public boolean contains(long id) {
+        Map.Entry<Long, Gap> entry = gaps.lowerEntry(Long.valueOf(id));
+        return entry != null && id < entry.getValue().before()
+                && !isExpired(entry.getValue());
+    }
+
+    /**
+     * Checks whether any id in the given range, inclusive, is in a skipped
+     * range.
+     */
+    public boolean intersects(long from, long to) {
+        if (from > to) {
+            return false;
+        }
+        Map.Entry<Long, Gap> entry = gaps.lowerEntry(Long.valueOf(from));
+        if (entry != null && from < entry.getValue().before()
+                && !isExpired(entry.getValue())) {
+            return true;
+        }
+        // Any gap starting within the range contains at least its next id
+        for (Gap gap : gaps.subMap(Long.valueOf(from), true,
+                Long.valueOf(to), false).values()) {
+            if (!isExpired(gap)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes an id that has been delivered from its skipped range, splitting
+     * the range around it.
+     */
+    public void fill(long id) {
+        Map.Entry<Long, Gap> entry = gaps.lowerEntry(Long.valueOf(id));
+        if (entry == null || id >= entry.getValue().before()) {
+            return;
+        }
+        Gap gap = entry.getValue();
+        gaps.remove(entry.getKey());
+        if (id - entry.getKey().longValue() >= 2) {
+            gaps.put(entry.getKey(), new Gap(id, gap.expires()));
+        }
+        if (gap.before() - id >= 2) {
+            gaps.put(Long.valueOf(id), gap);
+        }
+    }
+
+    private static boolean isExpired(Gap gap) {
+        return gap.expires() - System.nanoTime() < 0;
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.application;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vaadin.collaborationengine.Backend.Snapshot;
+
+/**
+ * Node-local cache of the latest snapshot of each log, evicting the least
+ * recently used snapshots when the total payload size exceeds a limit.
+ * <p>
+ * Nodes announce every snapshot they write on a shared channel. Other nodes
+ * then replace their cached copy with just the announced id unless it already
+ * has that id, so that they can tell that a replacement based on an older id
+ * would fail without asking the database. To avoid caching a snapshot that was
+ * replaced while it was being loaded or written, callers pass the
+ * {@link #getGeneration(String) generation} of the log from before the query
+ * to {@link #put(String, Snapshot, long)}. Generations are tracked for a
+ * bounded number of recently invalidated logs, so that invalidating one log
+ * doesn't discard concurrent loads of other logs.
+ * <p>
+ * Announcements are delivered in commit order, but this node's own writes are
+ * cached before their announcement arrives. Any announcement received while
+ * the announcement of the latest local write of a log is still on its way is
+ * therefore older than the cached snapshot and is ignored.
+ */
+public class SnapshotCache {
+    public record Stats(long entries, long bytes, long hits, long misses) {
+    }
+
+    /**
+     * A cached snapshot, or only the id of the current snapshot if
+     * <code>snapshot</code> is <code>null</code>.
+     */
+    private record CachedSnapshot(UUID id, Snapshot snapshot, long bytes) {
+    }
+
+    /**
+     * The channel on which snapshot replacements are announced.
+     */
+    public static final String CHANNEL = "ce_snapshots";
+
+    private static final char SEPARATOR = ':';
+
+    private static final int MAX_TRACKED_GENERATIONS = 10_000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<String, CachedSnapshot> snapshots = new LinkedHashMap<>(
+            16, 0.75f, true);
+
+    /**
+     * The latest snapshot id written by this node for each log whose
+     * announcement hasn't been received yet.
+     */
+    private final Map<String, UUID> unannouncedWrites = new HashMap<>();
+
+    /**
+     * The generation at which each recently invalidated log was last
+     * invalidated, in invalidation order.
+     */
+    private final Map<String, Long> generations = new LinkedHashMap<>();
+
+    private final long maxBytes;
+
+    private long bytes;
+
+    /**
+     * The latest generation handed out to any log.
+     */
+    private long generation;
+
+    /**
+     * The generation of all logs that are not tracked separately, which is
+     * older than the generation of any tracked log.
+     */
+    private long untrackedGeneration;
+
+    private long epoch;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SnapshotCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public Optional<Snapshot> get(String name) {
+        try {
+            lock.lock();
+            CachedSnapshot cached = snapshots.get(name);
+            if (cached == null || cached.snapshot() == null) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            hits.incrementAndGet();
+            return Optional.of(cached.snapshot());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the id of the current snapshot of a log, if known from a cached
+     * snapshot or from an announcement.
+     */
+    public Optional<UUID> getCurrentId(String name) {
+        try {
+            lock.lock();
+            CachedSnapshot cached = snapshots.get(name);
+            return Optional.ofNullable(cached).map(CachedSnapshot::id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets a counter that changes whenever the snapshot of the given log is
+     * invalidated.
+     */
+    public long getGeneration(String name) {
+        try {
+            lock.lock();
+            Long tracked = generations.get(name);
+            return tracked == null ? untrackedGeneration
+                    : tracked.longValue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void nextGeneration(String name) {
+        generation++;
+        generations.remove(name);
+        generations.put(name, Long.valueOf(generation));
+        if (generations.size() > MAX_TRACKED_GENERATIONS) {
+            Iterator<Long> eldest = generations.values().iterator();
+            untrackedGeneration = eldest.next().longValue();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Gets a counter that changes whenever the whole cache is cleared.
+     */
+    public long getEpoch() {
+        try {
+            lock.lock();
+            return epoch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches a snapshot loaded in bulk, unless the cache has been cleared
+     * since the given epoch or something is already known about the log.
+     * Unlike {@link #put(String, Snapshot, long)}, an announcement for one
+     * log doesn't prevent caching the others, since the announcement leaves
+     * the id of the announced snapshot behind.
+     */
+    public void preload(String name, Snapshot snapshot, long epoch) {
+        try {
+            lock.lock();
+            if (this.epoch == epoch && !snapshots.containsKey(name)) {
+                put(name, snapshot.getId(), snapshot);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches a snapshot unless the snapshot of the log has been invalidated
+     * since the given generation. In that case, anything cached for the log
+     * is dropped since it's unknown which snapshot is current.
+     */
+    public void put(String name, Snapshot snapshot, long generation) {
+        try {
+            lock.lock();
+            if (getGeneration(name) == generation) {
+                put(name, snapshot.getId(), snapshot);
+            } else {
+                remove(name);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches a snapshot written by this node, like
+     * {@link #put(String, Snapshot, long)}, and ignores announcements for the
+     * log until the announcement of this snapshot has been received. If an
+     * announcement was received during the write, it may have been the one
+     * for this snapshot, so nothing is cached or ignored in that case.
+     */
+    public void written(String name, Snapshot snapshot, long generation) {
+        try {
+            lock.lock();
+            if (getGeneration(name) == generation) {
+                unannouncedWrites.put(name, snapshot.getId());
+            }
+            put(name, snapshot, generation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(String name, UUID id, Snapshot snapshot) {
+        try {
+            lock.lock();
+            remove(name);
+
+            // Rough estimate of retained heap: chars, name, UUID and headers
+            long payloadLength = snapshot != null
+                    ? snapshot.getPayload().length()
+                    : 0;
+            long size = (payloadLength + name.length()) * 2L + 128;
+            if (size > maxBytes) {
+                return;
+            }
+            snapshots.put(name, new CachedSnapshot(id, snapshot, size));
+            bytes += size;
+
+            Iterator<CachedSnapshot> eldest = snapshots.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().bytes();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the cached snapshot of a log unless it has the given id, and
+     * remembers the id as the current one.
+     */
+    public void invalidate(String name, UUID currentId) {
+        try {
+            lock.lock();
+            nextGeneration(name);
+            UUID unannounced = unannouncedWrites.get(name);
+            if (unannounced != null) {
+                if (!unannounced.equals(currentId)) {
+                    // Committed before the latest local write
+                    return;
+                }
+                unannouncedWrites.remove(name);
+            }
+            CachedSnapshot cached = snapshots.get(name);
+            if (cached == null || !cached.id().equals(currentId)) {
+                put(name, currentId, null);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops everything cached for a log, e.g. after failing to replace its
+     * snapshot based on an id that turned out to be outdated.
+     */
+    public void invalidate(String name) {
+        try {
+            lock.lock();
+            nextGeneration(name);
+            remove(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops all cached snapshots, e.g. after announcements may have been
+     * missed.
+     */
+    public void clear() {
+        try {
+            lock.lock();
+            generation++;
+            untrackedGeneration = generation;
+            generations.clear();
+            epoch++;
+            snapshots.clear();
+            unannouncedWrites.clear();
+            bytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        try {
+            lock.lock();
+            return new Stats(snapshots.size(), bytes, hits.get(),
+                    misses.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates the announcement payload for a replaced snapshot.
+     */
+    public static String encode(String name, UUID snapshotId) {
+        return snapshotId.toString() + SEPARATOR + name;
+    }
+
+    /**
+     * Handles an announcement payload received from the shared channel.
+     */
+    public void handleNotification(String payload) {
+        int separator = payload.indexOf(SEPARATOR);
+        if (separator == -1) {
+            return;
+        }
+        UUID snapshotId;
+        try {
+            snapshotId = UUID.fromString(payload.substring(0, separator));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        invalidate(payload.substring(separator + 1), snapshotId);
+    }
+
+    private void remove(String name) {
+        CachedSnapshot removed = snapshots.remove(name);
+        if (removed != null) {
+            bytes -= removed.bytes();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.application;
 
+import java.time.Instant;
 import java.util.UUID;
 
 import com.vaadin.collaborationengine.Backend.Snapshot;
@@ -18,6 +19,16 @@ public class SnapshotEntity {
     @Column(columnDefinition = "text")
     private String payload;
 
+    @Column(columnDefinition = "bytea")
+    private byte[] payloadData;
+
+    /**
+     * When the snapshot was last replaced, set by the database.
+     */
+    @Column(columnDefinition = "timestamp(6) with time zone default now()",
+            insertable = false, updatable = false)
+    private Instant updatedAt;
+
     public SnapshotEntity() {
         // Hibernate constructor
     }
@@ -28,8 +39,13 @@ public class SnapshotEntity {
         this.payload = snapshot.getPayload();
     }
 
+    public String getLogId() {
+        return logId;
+    }
+
     public Snapshot asSnapshot() {
-        return new Snapshot(snapshotId, payload);
+        return new Snapshot(snapshotId,
+                PayloadCodec.decode(payload, payloadData));
     }
 
 }
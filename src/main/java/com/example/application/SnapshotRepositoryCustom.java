@@ -0,0 +1,23 @@
+package com.example.application;
+
+import java.util.UUID;
+
+/**
+ * Snapshot operations that can't be expressed as JPA queries.
+ */
+public interface SnapshotRepositoryCustom {
+    /**
+     * Replaces the snapshot of a log in a single statement if its current id
+     * is the expected one, or inserts it if the expected id is
+     * <code>null</code> and the log has no snapshot yet. A non-null expected
+     * id never matches a missing snapshot. A successful replacement is
+     * announced in the same transaction so that announcements are delivered
+     * in the order the replacements were committed.
+     *
+     * @return <code>true</code> if the snapshot was written and announced,
+     *         <code>false</code> if some other snapshot, or no snapshot, is
+     *         current
+     */
+    boolean replace(String name, UUID expectedId, UUID newId, String payload,
+            byte[] payloadData, String channel, String announcement);
+}
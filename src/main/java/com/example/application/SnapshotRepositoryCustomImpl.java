@@ -0,0 +1,52 @@
+package com.example.application;
+
+import java.util.UUID;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Implements snapshot replacement as a single conditional statement so that
+ * the outcome of the compare-and-set is known without a separate query. An
+ * existing snapshot is only updated if it has the expected id, and a new one
+ * is only inserted if none was expected.
+ */
+public class SnapshotRepositoryCustomImpl implements SnapshotRepositoryCustom {
+    private static final String UPDATE = """
+            with replaced as (
+                update snapshot
+                set snapshot_id = ?, payload = ?, payload_data = ?, updated_at = now()
+                where log_id = ? and snapshot_id = ?
+                returning log_id
+            )
+            select count(*) from (select pg_notify(?, ?) from replaced) notified""";
+
+    private static final String INSERT = """
+            with replaced as (
+                insert into snapshot (log_id, snapshot_id, payload, payload_data)
+                values (?, ?, ?, ?)
+                on conflict (log_id) do nothing
+                returning log_id
+            )
+            select count(*) from (select pg_notify(?, ?) from replaced) notified""";
+
+    private final JdbcTemplate jdbc;
+
+    public SnapshotRepositoryCustomImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public boolean replace(String name, UUID expectedId, UUID newId,
+            String payload, byte[] payloadData, String channel,
+            String announcement) {
+        Integer count;
+        if (expectedId == null) {
+            count = jdbc.queryForObject(INSERT, Integer.class, name, newId,
+                    payload, payloadData, channel, announcement);
+        } else {
+            count = jdbc.queryForObject(UPDATE, Integer.class, newId, payload,
+                    payloadData, name, expectedId, channel, announcement);
+        }
+        return count.intValue() == 1;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class EventNotificationTest {
+    private static final String LOG = "log";
+
+    @Test
+    void inlineEvents_roundTrip() {
+        List<EventLogEntry> entries = List.of(entry(1, "first"),
+                entry(5, "with:separators:"), entry(7, "åäö €"));
+
+        EventNotification notification = EventNotification.of(entries, true,
+                0, null);
+        assertTrue(notification.isInline());
+
+        EventNotification parsed = EventNotification.parse(LOG,
+                notification.encode());
+        assertEquals(1, parsed.firstId());
+        assertEquals(7, parsed.id());
+        assertNull(parsed.timing());
+        assertEvents(entries, parsed.events());
+    }
+
+    @Test
+    void timing_roundTrip() {
+        EventNotification.Timing timing = new EventNotification.Timing(
+                1_700_000_000_000L, 1_700_000_000_002L);
+        List<EventLogEntry> entries = List.of(entry(3, "payload"));
+
+        EventNotification inline = EventNotification.parse(LOG,
+                EventNotification.of(entries, true, 0, timing).encode());
+        assertEquals(timing, inline.timing());
+        assertEvents(entries, inline.events());
+
+        EventNotification reference = EventNotification.parse(LOG,
+                EventNotification.of(entries, false, 0, timing).encode());
+        assertEquals(timing, reference.timing());
+        assertEquals(3, reference.id());
+        assertFalse(reference.isInline());
+    }
+
+    @Test
+    void notInline_roundTripRange() {
+        EventNotification notification = EventNotification.of(
+                List.of(entry(10, "a"), entry(12, "b")), false, 0, null);
+        assertFalse(notification.isInline());
+        assertEquals("10-12", notification.encode());
+
+        EventNotification parsed = EventNotification.parse(LOG,
+                notification.encode());
+        assertEquals(10, parsed.firstId());
+        assertEquals(12, parsed.id());
+        assertFalse(parsed.isInline());
+    }
+
+    @Test
+    void singleReference_roundTrip() {
+        EventNotification notification = EventNotification.of(
+                List.of(entry(42, "a")), false, 0, null);
+        assertEquals("42", notification.encode());
+
+        EventNotification parsed = EventNotification.parse(LOG, "42");
+        assertEquals(42, parsed.firstId());
+        assertEquals(42, parsed.id());
+    }
+
+    @Test
+    void payloadAtLimit_inline() {
+        // 70 bytes of overhead per event plus the payload makes 7999 bytes
+        EventNotification notification = EventNotification.of(
+                List.of(entry(1, "x".repeat(7929))), true, 0, null);
+
+        assertTrue(notification.isInline());
+        assertTrue(notification.encode()
+                .getBytes(StandardCharsets.UTF_8).length < 8000);
+        assertEquals("x".repeat(7929), EventNotification
+                .parse(LOG, notification.encode()).events().get(0)
+                .getPayload());
+    }
+
+    @Test
+    void payloadOverLimit_fallsBackToReference() {
+        EventNotification notification = EventNotification.of(
+                List.of(entry(1, "x".repeat(7930))), true, 0, null);
+
+        assertFalse(notification.isInline());
+        assertEquals("1", notification.encode());
+    }
+
+    @Test
+    void multiByteOverLimit_fallsBackToReference() {
+        // Few enough chars to fit, but three bytes each in UTF-8
+        EventNotification notification = EventNotification.of(
+                List.of(entry(1, "€".repeat(3000))), true, 0, null);
+
+        assertFalse(notification.isInline());
+    }
+
+    @Test
+    void eventsTogetherOverLimit_fallBackToReference() {
+        List<EventLogEntry> entries = List.of(entry(1, "x".repeat(4000)),
+                entry(2, "x".repeat(4000)));
+
+        assertFalse(EventNotification.of(entries, true, 0, null).isInline());
+        assertTrue(EventNotification.of(entries.subList(0, 1), true, 0, null)
+                .isInline());
+    }
+
+    @Test
+    void reservedBytes_countTowardsLimit() {
+        List<EventLogEntry> entries = List.of(entry(1, "x".repeat(7900)));
+
+        assertTrue(EventNotification.of(entries, true, 0, null).isInline());
+        assertFalse(
+                EventNotification.of(entries, true, 100, null).isInline());
+        assertFalse(EventNotification
+                .of(entries, true, 0, new EventNotification.Timing(1, 2))
+                .isInline());
+    }
+
+    @Test
+    void invalidPayload_null() {
+        assertNull(EventNotification.parse(LOG, null));
+        assertNull(EventNotification.parse(LOG, ""));
+        assertNull(EventNotification.parse(LOG, "not a notification"));
+        assertNull(EventNotification.parse(LOG, "1:not-a-uuid:1:x"));
+    }
+
+    private static EventLogEntry entry(long id, String payload) {
+        return new EventLogEntry(id, UUID.randomUUID(), LOG, payload);
+    }
+
+    private static void assertEvents(List<EventLogEntry> expected,
+            List<EventLogEntry> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getEventId(),
+                    actual.get(i).getEventId());
+            assertEquals(LOG, actual.get(i).getLogId());
+            assertEquals(expected.get(i).getPayload(),
+                    actual.get(i).getPayload());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+class EventSubmitterTest {
+    private static EmbeddedPostgres postgres;
+
+    @BeforeAll
+    static void start() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        postgres.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void existingEventId_rejected(boolean partitioned) throws Exception {
+        PgBackendProperties properties = properties(partitioned);
+        DataSource dataSource = createDatabase(
+                "existing_" + (partitioned ? "partitioned" : "plain"));
+
+        try (EventLogTable table = new EventLogTable(dataSource, properties);
+                EventSubmitter submitter = submitter(dataSource, properties,
+                        table)) {
+            UUID eventId = UUID.randomUUID();
+            await(submitter.submit(eventId, "a", "first"));
+
+            // Another log, which may be in another partition
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> await(submitter.submit(eventId, "b", "second")));
+            assertInstanceOf(IllegalArgumentException.class, e.getCause());
+
+            await(submitter.submit(UUID.randomUUID(), "b", "third"));
+            assertEquals(List.of("first", "third"),
+                    new JdbcTemplate(dataSource).queryForList(
+                            "select payload from event_log_entry order by id",
+                            String.class));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void concurrentEventId_writtenOnce(boolean partitioned)
+            throws Exception {
+        PgBackendProperties properties = properties(partitioned);
+        DataSource dataSource = createDatabase(
+                "concurrent_" + (partitioned ? "partitioned" : "plain"));
+
+        try (EventLogTable table = new EventLogTable(dataSource, properties);
+                EventSubmitter first = submitter(dataSource, properties,
+                        table);
+                EventSubmitter second = submitter(dataSource, properties,
+                        table)) {
+            for (int i = 0; i < 20; i++) {
+                UUID eventId = UUID.randomUUID();
+                CompletableFuture<Void> a = first.submit(eventId, "a", "");
+                CompletableFuture<Void> b = second.submit(eventId, "b", "");
+
+                CompletableFuture.allOf(a, b).handle((ok, e) -> null)
+                        .get(10, TimeUnit.SECONDS);
+                assertEquals(1, (a.isCompletedExceptionally() ? 0 : 1)
+                        + (b.isCompletedExceptionally() ? 0 : 1));
+            }
+            assertEquals(20, new JdbcTemplate(dataSource).queryForObject(
+                    "select count(distinct event_id) from event_log_entry",
+                    Integer.class).intValue());
+        }
+    }
+
+    private static PgBackendProperties properties(boolean partitioned) {
+        PgBackendProperties properties = new PgBackendProperties();
+        properties.getPartitioning().setEnabled(partitioned);
+        return properties;
+    }
+
+    private static DataSource createDatabase(String name) {
+        new JdbcTemplate(postgres.getPostgresDatabase())
+                .execute("create database " + name);
+        return postgres.getDatabase("postgres", name);
+    }
+
+    private static EventSubmitter submitter(DataSource dataSource,
+            PgBackendProperties properties, EventLogTable table) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new EventSubmitter(dataSource, properties.getSubmit(),
+                properties.isInlinePayloads(), properties.getSequenceMode(),
+                table.isPartitioned(), new LogChannels(null, 0),
+                new PayloadCodec(properties.getPayloadStorage()),
+                new BackendMetrics(registry),
+                new EventTracer(registry, properties.getTracing()));
+    }
+
+    private static void await(CompletableFuture<Void> future)
+            throws Exception {
+        future.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class EventTailCacheTest {
+    private static final String LOG = "log";
+
+    private final List<EventLogEntry> events = List.of(entry(1), entry(2),
+            entry(3), entry(4), entry(5));
+
+    @Test
+    void noRead_notCovered() {
+        EventTailCache cache = new EventTailCache(100, Long.MAX_VALUE);
+
+        assertFalse(cache.findAllNewerThan(LOG, 0).isPresent());
+        assertEquals(1, cache.getStats().misses());
+    }
+
+    @Test
+    void finishedRead_coversRangeOfRead() {
+        EventTailCache cache = new EventTailCache(100, Long.MAX_VALUE);
+        cache.startRead(LOG, 0);
+        cache.recordRead(LOG, events.subList(0, 3));
+        cache.finishRead(LOG);
+
+        assertEquals(List.of(1L, 2L, 3L), ids(cache.findAllNewerThan(LOG, 0)));
+        assertEquals(List.of(3L), ids(cache.findAllNewerThan(LOG, 2)));
+        assertEquals(List.of(), ids(cache.findAllNewerThan(LOG, 3)));
+        assertFalse(cache.findAllNewerThan(LOG, -1).isPresent());
+    }
+
+    @Test
+    void unfinishedRead_notCovered() {
+        EventTailCache cache = new EventTailCache(100, Long.MAX_VALUE);
+        cache.startRead(LOG, 0);
+        cache.recordRead(LOG, events.subList(0, 3));
+
+        assertFalse(cache.findAllNewerThan(LOG, 0).isPresent());
+        assertFalse(cache.findAllNewerThan(LOG, 2).isPresent());
+        // Ids of the partial read are still valid
+        assertEquals(Optional.of(Long.valueOf(2)),
+                cache.findSequenceId(LOG, events.get(1).getEventId()));
+    }
+
+    @Test
+    void staleDuringRead_notCovered() {
+        EventTailCache cache = new EventTailCache(100, Long.MAX_VALUE);
+        cache.startRead(LOG, 0);
+        cache.recordRead(LOG, events.subList(0, 2));
+        cache.markStale(LOG);
+        cache.recordRead(LOG, events.subList(2, 3));
+        cache.finishRead(LOG);
+
+        assertFalse(cache.findAllNewerThan(LOG, 0).isPresent());
+        assertFalse(cache.findSequenceId(LOG, events.get(2).getEventId())
+                .isPresent());
+    }
+
+    @Test
+    void liveTail_recordsNotifiedEvents() {
+        EventTailCache cache = new EventTailCache(100, Long.MAX_VALUE);
+        cache.recordEvent(LOG, 1, events.get(0).getEventId(), "payload");
+        assertFalse(cache.findSequenceId(LOG, events.get(0).getEventId())
+                .isPresent());
+
+        cache.startRead(LOG, 1);
+        cache.finishRead(LOG);
+        cache.recordEvent(LOG, 2, events.get(1).getEventId(), "payload");
+
+        assertEquals(List.of(2L), ids(cache.findAllNewerThan(LOG, 1)));
+
+        cache.markStale(LOG);
+        assertFalse(cache.findAllNewerThan(LOG, 1).isPresent());
+    }
+
+    @Test
+    void eventsAtOrBeforeCoverage_ignored() {
+        EventTailCache cache = new EventTailCache(100, Long.MAX_VALUE);
+        cache.startRead(LOG, 2);
+        cache.recordRead(LOG, events);
+        cache.finishRead(LOG);
+
+        assertEquals(List.of(3L, 4L, 5L),
+                ids(cache.findAllNewerThan(LOG, 2)));
+        assertEquals(3, cache.getStats().entries());
+    }
+
+    @Test
+    void tooManyEntries_oldestEvicted() {
+        EventTailCache cache = new EventTailCache(3, Long.MAX_VALUE);
+        cache.startRead(LOG, 0);
+        cache.recordRead(LOG, events);
+        cache.finishRead(LOG);
+
+        assertEquals(3, cache.getStats().entries());
+        // Coverage starts after the evicted events
+        assertFalse(cache.findAllNewerThan(LOG, 1).isPresent());
+        assertEquals(List.of(3L, 4L, 5L),
+                ids(cache.findAllNewerThan(LOG, 2)));
+    }
+
+    @Test
+    void tooManyBytes_oldestEvicted() {
+        // Each event with a 100 char payload takes 296 bytes
+        EventTailCache cache = new EventTailCache(100, 700);
+        List<EventLogEntry> large = new ArrayList<>();
+        for (int id = 1; id <= 3; id++) {
+            large.add(new EventLogEntry(id, UUID.randomUUID(), LOG,
+                    "x".repeat(100)));
+        }
+        cache.startRead(LOG, 0);
+        cache.recordRead(LOG, large);
+        cache.finishRead(LOG);
+
+        assertEquals(2, cache.getStats().entries());
+        assertEquals(592, cache.getStats().bytes());
+        assertEquals(List.of(2L, 3L), ids(cache.findAllNewerThan(LOG, 1)));
+    }
+
+    @Test
+    void evictionAfterRead_coverageMovesForward() {
+        EventTailCache cache = new EventTailCache(3, Long.MAX_VALUE);
+        cache.startRead(LOG, 0);
+        cache.recordRead(LOG, events.subList(0, 3));
+        cache.finishRead(LOG);
+        cache.recordEvent(LOG, 4, events.get(3).getEventId(), "payload");
+
+        assertFalse(cache.findAllNewerThan(LOG, 0).isPresent());
+        assertEquals(List.of(2L, 3L, 4L),
+                ids(cache.findAllNewerThan(LOG, 1)));
+    }
+
+    @Test
+    void truncate_removesOlderEventsAndResumePoints() {
+        EventTailCache cache = new EventTailCache(100, Long.MAX_VALUE);
+        cache.startRead(LOG, 0);
+        cache.recordRead(LOG, events);
+        cache.finishRead(LOG);
+        UUID resumed = UUID.randomUUID();
+        cache.recordResumePoint(LOG, resumed, 2);
+
+        cache.truncate(LOG, 3);
+
+        assertFalse(cache.findSequenceId(LOG, events.get(1).getEventId())
+                .isPresent());
+        assertFalse(cache.findSequenceId(LOG, resumed).isPresent());
+        assertEquals(Optional.of(Long.valueOf(3)),
+                cache.findSequenceId(LOG, events.get(2).getEventId()));
+    }
+
+    @Test
+    void resumePoint_outlivesEvictedEvent() {
+        EventTailCache cache = new EventTailCache(2, Long.MAX_VALUE);
+        cache.startRead(LOG, 0);
+        cache.recordRead(LOG, events.subList(0, 1));
+        cache.finishRead(LOG);
+        cache.recordResumePoint(LOG, events.get(0).getEventId(), 1);
+
+        cache.recordEvent(LOG, 2, events.get(1).getEventId(), "payload");
+        cache.recordEvent(LOG, 3, events.get(2).getEventId(), "payload");
+
+        assertEquals(Optional.of(Long.valueOf(1)),
+                cache.findSequenceId(LOG, events.get(0).getEventId()));
+        assertFalse(cache.findSequenceId("other", events.get(0).getEventId())
+                .isPresent());
+    }
+
+    @Test
+    void preload_usableUntilLive() {
+        EventTailCache cache = new EventTailCache(100, Long.MAX_VALUE);
+        cache.recordPreload(LOG, 2, events.subList(2, 5));
+
+        assertFalse(cache.findAllNewerThan(LOG, 2).isPresent());
+        assertEquals(List.of(4L, 5L), ids(cache.findPreloaded(LOG, 3)));
+        assertFalse(cache.findPreloaded(LOG, 1).isPresent());
+
+        cache.startRead(LOG, 4);
+        assertFalse(cache.findPreloaded(LOG, 4).isPresent());
+        cache.finishRead(LOG);
+        assertFalse(cache.findPreloaded(LOG, 4).isPresent());
+        // The read replaces the preloaded events
+        assertEquals(List.of(), ids(cache.findAllNewerThan(LOG, 4)));
+    }
+
+    @Test
+    void preload_ignoredWhileLive() {
+        EventTailCache cache = new EventTailCache(100, Long.MAX_VALUE);
+        cache.startRead(LOG, 0);
+        cache.recordRead(LOG, events.subList(0, 2));
+        cache.finishRead(LOG);
+
+        cache.recordPreload(LOG, 2, events.subList(2, 5));
+
+        assertEquals(List.of(1L, 2L), ids(cache.findAllNewerThan(LOG, 0)));
+    }
+
+    private static EventLogEntry entry(long id) {
+        return new EventLogEntry(id, UUID.randomUUID(), LOG, "payload");
+    }
+
+    private static List<Long> ids(Optional<List<EventLogEntry>> events) {
+        return events.orElseThrow().stream()
+                .map(event -> Long.valueOf(event.getId())).toList();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class PayloadCodecTest {
+    private static final String SHORT = "{\"value\":\"åäö €\"}";
+
+    private static final String LONG = (SHORT + ",").repeat(100);
+
+    @Test
+    void textFormat_storedAsText() {
+        PayloadCodec.Stored stored = codec(
+                PgBackendProperties.PayloadStorage.Format.TEXT, 1)
+                .store(LONG);
+
+        assertEquals(LONG, stored.text());
+        assertNull(stored.data());
+        assertEquals(LONG, PayloadCodec.decode(stored.text(), stored.data()));
+    }
+
+    @Test
+    void binaryFormat_belowThreshold_storedPlain() {
+        PayloadCodec.Stored stored = codec(
+                PgBackendProperties.PayloadStorage.Format.BINARY, 512)
+                .store(SHORT);
+
+        assertNull(stored.text());
+        assertEquals(0, stored.data()[0]);
+        assertEquals(SHORT.getBytes(StandardCharsets.UTF_8).length + 1,
+                stored.data().length);
+        assertEquals(SHORT, PayloadCodec.decode(stored.text(), stored.data()));
+    }
+
+    @Test
+    void binaryFormat_aboveThreshold_compressed() {
+        PayloadCodec.Stored stored = codec(
+                PgBackendProperties.PayloadStorage.Format.BINARY, 512)
+                .store(LONG);
+
+        assertNull(stored.text());
+        assertEquals(1, stored.data()[0]);
+        assertTrue(stored.data().length < LONG
+                .getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(LONG, PayloadCodec.decode(stored.text(), stored.data()));
+    }
+
+    @Test
+    void incompressible_storedPlain() {
+        byte[] data = codec(PgBackendProperties.PayloadStorage.Format.BINARY,
+                1).encode("ab");
+
+        assertEquals(0, data[0]);
+        assertEquals("ab", PayloadCodec.decode(data));
+    }
+
+    @Test
+    void emptyPayload_roundTrip() {
+        byte[] data = codec(PgBackendProperties.PayloadStorage.Format.BINARY,
+                512).encode("");
+
+        assertEquals("", PayloadCodec.decode(data));
+    }
+
+    @Test
+    void unknownEncoding_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PayloadCodec.decode(new byte[] { 2, 'a' }));
+    }
+
+    @Test
+    void noPayload_null() {
+        assertNull(PayloadCodec.decode(null, null));
+    }
+
+    private static PayloadCodec codec(
+            PgBackendProperties.PayloadStorage.Format format,
+            int compressionThreshold) {
+        PgBackendProperties.PayloadStorage settings = new PgBackendProperties()
+                .getPayloadStorage();
+        settings.setFormat(format);
+        settings.setCompressionThreshold(compressionThreshold);
+        return new PayloadCodec(settings);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.application;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class SequenceGapsTest {
+    @Test
+    void skippedRange_containsOnlyIdsBetween() {
+        SequenceGaps gaps = gaps(Duration.ofMinutes(1), 10);
+        gaps.skipped(10, 14);
+
+        assertFalse(gaps.contains(10));
+        assertTrue(gaps.contains(11));
+        assertTrue(gaps.contains(13));
+        assertFalse(gaps.contains(14));
+    }
+
+    @Test
+    void consecutiveIds_noGap() {
+        SequenceGaps gaps = gaps(Duration.ofMinutes(1), 10);
+        gaps.skipped(10, 11);
+
+        assertFalse(gaps.intersects(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void intersects_rangeBoundaries() {
+        SequenceGaps gaps = gaps(Duration.ofMinutes(1), 10);
+        gaps.skipped(10, 20);
+
+        assertFalse(gaps.intersects(5, 10));
+        assertTrue(gaps.intersects(5, 11));
+        assertTrue(gaps.intersects(15, 16));
+        assertTrue(gaps.intersects(19, 30));
+        assertFalse(gaps.intersects(20, 30));
+        assertFalse(gaps.intersects(16, 15));
+    }
+
+    @Test
+    void fill_splitsRange() {
+        SequenceGaps gaps = gaps(Duration.ofMinutes(1), 10);
+        gaps.skipped(10, 14);
+
+        gaps.fill(12);
+        assertTrue(gaps.contains(11));
+        assertFalse(gaps.contains(12));
+        assertTrue(gaps.contains(13));
+
+        gaps.fill(11);
+        gaps.fill(13);
+        assertFalse(gaps.intersects(10, 14));
+    }
+
+    @Test
+    void fill_outsideRange_ignored() {
+        SequenceGaps gaps = gaps(Duration.ofMinutes(1), 10);
+        gaps.skipped(10, 14);
+
+        gaps.fill(14);
+        gaps.fill(20);
+        assertTrue(gaps.contains(11));
+        assertTrue(gaps.contains(13));
+    }
+
+    @Test
+    void tooManyGaps_lowestDropped() {
+        SequenceGaps gaps = gaps(Duration.ofMinutes(1), 2);
+        gaps.skipped(1, 3);
+        gaps.skipped(5, 7);
+        gaps.skipped(9, 11);
+
+        assertFalse(gaps.contains(2));
+        assertTrue(gaps.contains(6));
+        assertTrue(gaps.contains(10));
+    }
+
+    @Test
+    void noGapsAllowed_nothingTracked() {
+        SequenceGaps gaps = gaps(Duration.ofMinutes(1), 0);
+        gaps.skipped(1, 10);
+
+        assertFalse(gaps.contains(5));
+    }
+
+    @Test
+    void expiredGap_notContained() throws InterruptedException {
+        SequenceGaps gaps = gaps(Duration.ofMillis(1), 10);
+        gaps.skipped(1, 10);
+
+        Thread.sleep(10);
+        assertFalse(gaps.contains(5));
+        assertFalse(gaps.intersects(1, 10));
+    }
+
+    private static SequenceGaps gaps(Duration timeout, int maxGaps) {
+        PgBackendProperties.GapTracking settings = new PgBackendProperties()
+                .getGapTracking();
+        settings.setTimeout(timeout);
+        settings.setMaxGaps(maxGaps);
+        return new SequenceGaps(settings);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.vaadin.collaborationengine.Backend.Snapshot;
+
+class SnapshotCacheTest {
+    private final SnapshotCache cache = new SnapshotCache(Long.MAX_VALUE);
+
+    @Test
+    void putAtCurrentGeneration_cached() {
+        Snapshot snapshot = snapshot();
+        cache.put("a", snapshot, cache.getGeneration("a"));
+
+        assertSame(snapshot, cache.get("a").orElseThrow());
+        assertEquals(Optional.of(snapshot.getId()), cache.getCurrentId("a"));
+    }
+
+    @Test
+    void putAfterInvalidation_dropped() {
+        Snapshot snapshot = snapshot();
+        cache.put("a", snapshot, cache.getGeneration("a"));
+
+        long generation = cache.getGeneration("a");
+        cache.invalidate("a", UUID.randomUUID());
+        assertNotEquals(generation, cache.getGeneration("a"));
+
+        cache.put("a", snapshot(), generation);
+        assertFalse(cache.get("a").isPresent());
+        assertFalse(cache.getCurrentId("a").isPresent());
+    }
+
+    @Test
+    void invalidatingOtherLog_generationUnchanged() {
+        long generation = cache.getGeneration("a");
+        cache.invalidate("b");
+        cache.invalidate("c", UUID.randomUUID());
+
+        assertEquals(generation, cache.getGeneration("a"));
+        Snapshot snapshot = snapshot();
+        cache.put("a", snapshot, generation);
+        assertSame(snapshot, cache.get("a").orElseThrow());
+    }
+
+    @Test
+    void clear_changesAllGenerationsAndEpoch() {
+        long generationA = cache.getGeneration("a");
+        cache.invalidate("b");
+        long generationB = cache.getGeneration("b");
+        long epoch = cache.getEpoch();
+
+        cache.clear();
+
+        assertNotEquals(generationA, cache.getGeneration("a"));
+        assertNotEquals(generationB, cache.getGeneration("b"));
+        assertNotEquals(epoch, cache.getEpoch());
+
+        cache.preload("a", snapshot(), epoch);
+        assertFalse(cache.get("a").isPresent());
+        cache.preload("a", snapshot(), cache.getEpoch());
+        assertTrue(cache.get("a").isPresent());
+    }
+
+    @Test
+    void preload_doesNotReplaceAnnouncedId() {
+        UUID announced = UUID.randomUUID();
+        cache.handleNotification(SnapshotCache.encode("a", announced));
+
+        cache.preload("a", snapshot(), cache.getEpoch());
+
+        assertFalse(cache.get("a").isPresent());
+        assertEquals(Optional.of(announced), cache.getCurrentId("a"));
+    }
+
+    @Test
+    void announcementOfOtherId_keepsOnlyId() {
+        cache.put("a", snapshot(), cache.getGeneration("a"));
+        UUID announced = UUID.randomUUID();
+
+        cache.handleNotification(SnapshotCache.encode("a", announced));
+
+        assertFalse(cache.get("a").isPresent());
+        assertEquals(Optional.of(announced), cache.getCurrentId("a"));
+    }
+
+    @Test
+    void announcementOfCachedId_keepsSnapshot() {
+        Snapshot snapshot = snapshot();
+        cache.put("a", snapshot, cache.getGeneration("a"));
+
+        cache.handleNotification(
+                SnapshotCache.encode("a", snapshot.getId()));
+
+        assertSame(snapshot, cache.get("a").orElseThrow());
+    }
+
+    @Test
+    void ownWrite_olderAnnouncementsIgnored() {
+        Snapshot written = snapshot();
+        cache.written("a", written, cache.getGeneration("a"));
+
+        // Committed before the local write, announced after it was cached
+        cache.handleNotification(
+                SnapshotCache.encode("a", UUID.randomUUID()));
+        assertSame(written, cache.get("a").orElseThrow());
+
+        cache.handleNotification(SnapshotCache.encode("a", written.getId()));
+        assertSame(written, cache.get("a").orElseThrow());
+
+        UUID newer = UUID.randomUUID();
+        cache.handleNotification(SnapshotCache.encode("a", newer));
+        assertFalse(cache.get("a").isPresent());
+        assertEquals(Optional.of(newer), cache.getCurrentId("a"));
+    }
+
+    @Test
+    void ownWriteAfterAnnouncement_notCached() {
+        long generation = cache.getGeneration("a");
+        cache.handleNotification(
+                SnapshotCache.encode("a", UUID.randomUUID()));
+
+        cache.written("a", snapshot(), generation);
+
+        assertFalse(cache.get("a").isPresent());
+        // Nothing is ignored, so the next announcement is applied
+        UUID announced = UUID.randomUUID();
+        cache.handleNotification(SnapshotCache.encode("a", announced));
+        assertEquals(Optional.of(announced), cache.getCurrentId("a"));
+    }
+
+    @Test
+    void invalidAnnouncement_ignored() {
+        Snapshot snapshot = snapshot();
+        cache.put("a", snapshot, cache.getGeneration("a"));
+
+        cache.handleNotification("a");
+        cache.handleNotification("not-a-uuid:a");
+
+        assertSame(snapshot, cache.get("a").orElseThrow());
+    }
+
+    @Test
+    void tooManyBytes_leastRecentlyUsedEvicted() {
+        // Each snapshot with a 100 char payload and a one char name takes
+        // 330 bytes
+        SnapshotCache small = new SnapshotCache(700);
+        small.put("a", snapshot("x".repeat(100)), small.getGeneration("a"));
+        small.put("b", snapshot("x".repeat(100)), small.getGeneration("b"));
+        small.get("a");
+        small.put("c", snapshot("x".repeat(100)), small.getGeneration("c"));
+
+        assertTrue(small.get("a").isPresent());
+        assertFalse(small.get("b").isPresent());
+        assertTrue(small.get("c").isPresent());
+        assertEquals(660, small.getStats().bytes());
+    }
+
+    private static Snapshot snapshot() {
+        return snapshot("payload");
+    }
+
+    private static Snapshot snapshot(String payload) {
+        return new Snapshot(UUID.randomUUID(), payload);
+    }
+}